@@ -0,0 +1,103 @@
+package com.pesexpo.apigateway.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.WebFilterChainProxy;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of GET /_next/static/... from a logged-in browser (session cookie):
+ * the main security chain (session lookup, security context and saved-request loading,
+ * authorization, session save on commit) vs the static-assets fast path in SecurityConfig.
+ *
+ * oauth2Login is left out of the main chain here; it adds matchers, not session access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StaticPathSecurityBenchmark {
+
+    private DefaultWebSessionManager sessionManager;
+    private String sessionId;
+    private WebFilterChainProxy mainChain;
+    private WebFilterChainProxy fastPath;
+
+    @Setup
+    public void setup() {
+        InMemoryWebSessionStore sessionStore = new InMemoryWebSessionStore();
+        sessionManager = new DefaultWebSessionManager();
+        sessionManager.setSessionStore(sessionStore);
+
+        WebSession session = sessionStore.createWebSession().block();
+        session.start();
+        session.getAttributes().put(WebSessionServerSecurityContextRepository.DEFAULT_SPRING_SECURITY_CONTEXT_ATTR_NAME,
+                new SecurityContextImpl(new TestingAuthenticationToken("user", "n/a", "ROLE_USER")));
+        session.save().block();
+        sessionId = session.getId();
+
+        SecurityWebFilterChain main = ServerHttpSecurity.http()
+                .securityContextRepository(new WebSessionServerSecurityContextRepository())
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .authorizeExchange(exchange -> exchange
+                        .pathMatchers(SecurityConfig.STATIC_PATHS).permitAll()
+                        .anyExchange().authenticated())
+                .build();
+        mainChain = new WebFilterChainProxy(main);
+
+        SecurityWebFilterChain fast = ServerHttpSecurity.http()
+                .securityMatcher(SecurityConfig.STATIC_ASSET_READS)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .requestCache(cache -> cache.requestCache(NoOpServerRequestCache.getInstance()))
+                .anonymous(ServerHttpSecurity.AnonymousSpec::disable)
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .build();
+        fastPath = new WebFilterChainProxy(fast, main);
+    }
+
+    @Benchmark
+    public Object mainChain() {
+        return run(mainChain);
+    }
+
+    @Benchmark
+    public Object fastPath() {
+        return run(fastPath);
+    }
+
+    private Object run(WebFilterChainProxy proxy) {
+        MockServerWebExchange exchange = MockServerWebExchange.builder(
+                        MockServerHttpRequest.get("/_next/static/chunks/main-3f1c2d4e.js")
+                                .cookie(new HttpCookie("SESSION", sessionId)))
+                .sessionManager(sessionManager)
+                .build();
+        // Commit the response too: that is when a resolved session gets saved
+        proxy.filter(exchange, ex -> Mono.empty())
+                .then(Mono.defer(() -> exchange.getResponse().setComplete()))
+                .block();
+        return exchange.getResponse();
+    }
+}
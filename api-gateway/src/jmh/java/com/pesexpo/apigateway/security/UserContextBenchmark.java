@@ -0,0 +1,126 @@
+package com.pesexpo.apigateway.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header propagation for write requests: the previous per-request implementation of
+ * MicroserviceSecurityFilter (authority list + reduce join) vs applying the session snapshot.
+ * Both check the write against the route policy the filter uses (app.security.policies).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserContextBenchmark {
+
+    private Authentication authentication;
+    private UserContext snapshot;
+    private RoutePolicyEngine routePolicyEngine;
+    private PathContainer path;
+
+    @Setup
+    public void setup() {
+        OidcIdToken idToken = OidcIdToken.withTokenValue("id-token")
+                .subject("3f1c2d4e-user")
+                .claim("email", "user@example.com")
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build();
+
+        List<GrantedAuthority> authorities = List.of(
+                new OidcUserAuthority(idToken),
+                new SimpleGrantedAuthority("SCOPE_openid"),
+                new SimpleGrantedAuthority("SCOPE_profile"),
+                new SimpleGrantedAuthority("SCOPE_email"),
+                new SimpleGrantedAuthority("SCOPE_read"),
+                new SimpleGrantedAuthority("SCOPE_write"),
+                new SimpleGrantedAuthority("ROLE_USER"));
+
+        OidcUser oidcUser = new DefaultOidcUser(authorities, idToken);
+        authentication = new OAuth2AuthenticationToken(oidcUser, authorities, "api-gateway-client");
+        snapshot = UserContext.from(authentication);
+
+        // Same rules as application.yml
+        List<String> writers = List.of("SCOPE_write", "ROLE_USER", "ROLE_ADMIN", "ROLE_MANAGER");
+        MockEnvironment environment = new MockEnvironment();
+        policy(environment, 0, "/api/v1/products/**", "GET", null);
+        policy(environment, 1, "/api/v1/products/**", null, writers);
+        policy(environment, 2, "/api/v1/orders/**", "GET", null);
+        policy(environment, 3, "/api/v1/orders/**", null, writers);
+        routePolicyEngine = new RoutePolicyEngine(environment);
+        path = RequestPath.parse("/api/v1/orders/8b0e6a52-order", null).pathWithinApplication();
+    }
+
+    private static void policy(MockEnvironment environment, int index, String pattern, String method,
+                               List<String> authorities) {
+        String prefix = "app.security.policies[" + index + "].";
+        environment.setProperty(prefix + "path", pattern);
+        if (method != null) {
+            environment.setProperty(prefix + "methods[0]", method);
+            environment.setProperty(prefix + "permit-all", "true");
+        }
+        if (authorities != null) {
+            for (int i = 0; i < authorities.size(); i++) {
+                environment.setProperty(prefix + "authorities[" + i + "]", authorities.get(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public HttpHeaders perRequest() {
+        HttpHeaders headers = new HttpHeaders();
+
+        CompiledRoutePolicy.Rule rule = routePolicyEngine.match(path, HttpMethod.POST);
+        boolean hasWriteAccess = rule.allows(authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+
+        if (hasWriteAccess && authentication.getPrincipal() instanceof OidcUser oidcUser) {
+            headers.set(UserContext.USER_ID_HEADER, oidcUser.getSubject());
+            String email = oidcUser.getEmail();
+            if (email != null) {
+                headers.set(UserContext.USER_EMAIL_HEADER, email);
+            }
+            String roles = authentication.getAuthorities().stream()
+                    .map(Object::toString)
+                    .reduce((a, b) -> a + "," + b)
+                    .orElse("");
+            if (!roles.isEmpty()) {
+                headers.set(UserContext.USER_ROLES_HEADER, roles);
+            }
+        }
+        return headers;
+    }
+
+    @Benchmark
+    public HttpHeaders sessionSnapshot() {
+        HttpHeaders headers = new HttpHeaders();
+        CompiledRoutePolicy.Rule rule = routePolicyEngine.match(path, HttpMethod.POST);
+        if (rule.allows(snapshot.authorities())) {
+            snapshot.applyTo(headers);
+        }
+        return headers;
+    }
+}
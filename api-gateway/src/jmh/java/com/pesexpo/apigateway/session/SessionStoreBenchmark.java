@@ -0,0 +1,219 @@
+package com.pesexpo.apigateway.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of restoring a logged-in browser's security context, 8 threads at once:
+ * the in-memory WebSession store (session lookup among {@code sessions} live ones, context
+ * attribute, last-access save on commit) vs the sealed login cookie (base64, AES-GCM open,
+ * inflate, ID token claims parse). cookieRefresh adds re-sealing after a token refresh.
+ *
+ * Token sizes are typical for the auth server (HS256 here; RS256 signatures are longer).
+ * The in-memory side leaves out the authorized client lookup, which the cookie already holds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(8)
+public class SessionStoreBenchmark {
+
+    private static final String REGISTRATION_ID = "api-gateway-client";
+
+    @Param({"10000"})
+    public int sessions;
+
+    private DefaultWebSessionManager sessionManager;
+    private WebSessionServerSecurityContextRepository sessionContextRepository;
+    private String[] sessionIds;
+
+    private SessionCookieRepository cookieRepository;
+    private List<HttpCookie> loginCookies;
+    private OAuth2AuthorizedClient refreshedClient;
+    private OAuth2AuthenticationToken authentication;
+
+    @Setup
+    public void setup() {
+        Instant now = Instant.now();
+        OidcIdToken idToken = OidcIdToken.withTokenValue(jwt(900))
+                .subject(UUID.randomUUID().toString())
+                .issuer("http://localhost:9000")
+                .audience(List.of("api-gateway"))
+                .issuedAt(now)
+                .expiresAt(now.plus(Duration.ofHours(1)))
+                .claim("email", "user@example.com")
+                .claim("sid", UUID.randomUUID().toString())
+                .build();
+        List<GrantedAuthority> authorities = List.of(new OidcUserAuthority(idToken, null),
+                new SimpleGrantedAuthority("SCOPE_openid"), new SimpleGrantedAuthority("SCOPE_read"),
+                new SimpleGrantedAuthority("SCOPE_write"), new SimpleGrantedAuthority("ROLE_USER"));
+        authentication = new OAuth2AuthenticationToken(new DefaultOidcUser(authorities, idToken, "sub"),
+                authorities, REGISTRATION_ID);
+        SecurityContextImpl context = new SecurityContextImpl(authentication);
+
+        // In-memory WebSession store with `sessions` logged-in users
+        InMemoryWebSessionStore sessionStore = new InMemoryWebSessionStore();
+        sessionStore.setMaxSessions(sessions + 1);
+        sessionManager = new DefaultWebSessionManager();
+        sessionManager.setSessionStore(sessionStore);
+        sessionContextRepository = new WebSessionServerSecurityContextRepository();
+        sessionIds = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            WebSession session = sessionStore.createWebSession().block();
+            session.getAttributes().put(WebSessionServerSecurityContextRepository.DEFAULT_SPRING_SECURITY_CONTEXT_ATTR_NAME, context);
+            session.save().block();
+            sessionIds[i] = session.getId();
+        }
+
+        // Sealed cookie: log in once and keep the resulting cookies
+        ClientRegistration registration = registration();
+        cookieRepository = new SessionCookieRepository(
+                new CookieSealer(List.of(key()), new SimpleMeterRegistry()),
+                new ChunkedCookie("GATEWAY_SESSION", 3800, 2, true),
+                Duration.ofDays(7), new InMemoryReactiveClientRegistrationRepository(registration),
+                new SimpleMeterRegistry());
+        OAuth2AuthorizedClient client = authorizedClient(registration, now);
+        refreshedClient = authorizedClient(registration, now.plusSeconds(300));
+
+        MockServerWebExchange login = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/login/oauth2/code/" + REGISTRATION_ID));
+        cookieRepository.saveAuthorizedClient(client, authentication, login)
+                .then(cookieRepository.save(login, context))
+                .then(Mono.defer(() -> login.getResponse().setComplete()))
+                .block();
+        loginCookies = new ArrayList<>();
+        for (List<ResponseCookie> cookies : login.getResponse().getCookies().values()) {
+            for (ResponseCookie cookie : cookies) {
+                loginCookies.add(new HttpCookie(cookie.getName(), cookie.getValue()));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object inMemorySession() {
+        String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(sessions)];
+        MockServerWebExchange exchange = MockServerWebExchange.builder(
+                        MockServerHttpRequest.get("/api/v1/orders").cookie(new HttpCookie("SESSION", sessionId)))
+                .sessionManager(sessionManager)
+                .build();
+        return sessionContextRepository.load(exchange)
+                .flatMap(loaded -> exchange.getResponse().setComplete().thenReturn(loaded))
+                .block();
+    }
+
+    @Benchmark
+    public Object cookie() {
+        MockServerWebExchange exchange = cookieExchange();
+        return cookieRepository.load(exchange)
+                .flatMap(loaded -> exchange.getResponse().setComplete().thenReturn(loaded))
+                .block();
+    }
+
+    @Benchmark
+    public Object cookieRefresh() {
+        MockServerWebExchange exchange = cookieExchange();
+        return cookieRepository.load(exchange)
+                .flatMap(loaded -> cookieRepository.saveAuthorizedClient(refreshedClient, authentication, exchange)
+                        .then(exchange.getResponse().setComplete())
+                        .thenReturn(loaded))
+                .block();
+    }
+
+    private MockServerWebExchange cookieExchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/orders")
+                .cookie(loginCookies.toArray(HttpCookie[]::new)));
+    }
+
+    private static ClientRegistration registration() {
+        return ClientRegistration.withRegistrationId(REGISTRATION_ID)
+                .clientId("api-gateway")
+                .clientSecret("gateway-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("openid", "profile", "email", "read", "write")
+                .authorizationUri("http://localhost:9000/oauth2/authorize")
+                .tokenUri("http://localhost:9000/oauth2/token")
+                .jwkSetUri("http://localhost:9000/oauth2/jwks")
+                .userInfoUri("http://localhost:9000/userinfo")
+                .userNameAttributeName("sub")
+                .build();
+    }
+
+    private static OAuth2AuthorizedClient authorizedClient(ClientRegistration registration, Instant issuedAt) {
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, jwt(1100),
+                issuedAt, issuedAt.plus(Duration.ofMinutes(5)), Set.of("openid", "profile", "email", "read", "write"));
+        OAuth2RefreshToken refreshToken = new OAuth2RefreshToken(random(96), issuedAt);
+        return new OAuth2AuthorizedClient(registration, "user", accessToken, refreshToken);
+    }
+
+    // A JWT-shaped token: base64url header.payload.signature of about the given length
+    private static String jwt(int length) {
+        String header = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        StringBuilder payload = new StringBuilder("{\"sub\":\"user\",\"iss\":\"http://localhost:9000\",\"aud\":\"api-gateway\"");
+        Instant now = Instant.now();
+        payload.append(",\"iat\":").append(now.getEpochSecond())
+                .append(",\"exp\":").append(now.plus(Duration.ofHours(1)).getEpochSecond());
+        int pad = 0;
+        while (header.length() + payload.length() * 4 / 3 + 50 < length) {
+            payload.append(",\"c").append(pad++).append("\":\"").append(random(16)).append('"');
+        }
+        payload.append('}');
+        String body = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return header + "." + body + "." + random(43);
+    }
+
+    private static String random(int length) {
+        byte[] bytes = new byte[length];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes).substring(0, length);
+    }
+
+    private static String key() {
+        byte[] key = new byte[32];
+        ThreadLocalRandom.current().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
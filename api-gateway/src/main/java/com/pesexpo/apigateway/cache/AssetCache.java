@@ -0,0 +1,243 @@
+package com.pesexpo.apigateway.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Two-tier cache for immutable static assets (content-hashed Next.js bundles, fonts, images)
+ *
+ * - Memory tier: small assets as byte arrays, LRU bounded in bytes
+ * - Disk tier: larger assets as files in {@code directory}, LRU bounded in bytes; served
+ *   zero-copy (sendfile) or memory-mapped by the filter, never read onto the heap
+ * - Disk hits are pinned until released: sendfile opens the file by path, so a file evicted or
+ *   replaced while being sent is deleted only once its last reader is done; every write gets
+ *   a new file, a replacement never rewrites one in place
+ * - Entries never expire: only immutable responses are stored, eviction is by size only
+ * - Disk writes run off the event loop; an entry becomes visible once its file is complete
+ * - The disk index lives in memory, so files from a previous run are deleted on startup
+ *
+ * Metrics: gateway.assets.requests{result=memory|disk|miss}, gateway.assets.entries{tier},
+ * gateway.assets.bytes{tier}
+ */
+@Slf4j
+public class AssetCache {
+
+    private static final String FILE_SUFFIX = ".asset";
+
+    /**
+     * A cached asset: {@code body} for the memory tier, {@code file} for the disk tier
+     */
+    public record Asset(HttpHeaders headers, long length, byte[] body, Path file) {
+
+        public boolean inMemory() {
+            return body != null;
+        }
+    }
+
+    private final Path directory;
+    private final long memoryMaxBytes;
+    private final long memoryMaxEntryBytes;
+    private final long diskMaxBytes;
+    private final long diskMaxEntryBytes;
+
+    // Access-ordered maps = LRU iteration order; guarded by this
+    private final LinkedHashMap<String, Asset> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Asset> disk = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    // Disk files being sent (reader count) and files to delete once their readers are done
+    private final Map<Path, Integer> readers = new HashMap<>();
+    private final Set<Path> pendingDeletes = new HashSet<>();
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    public AssetCache(Path directory, long memoryMaxBytes, long memoryMaxEntryBytes,
+                      long diskMaxBytes, long diskMaxEntryBytes, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.memoryMaxEntryBytes = Math.min(memoryMaxEntryBytes, memoryMaxBytes);
+        this.diskMaxBytes = diskMaxBytes;
+        this.diskMaxEntryBytes = Math.min(diskMaxEntryBytes, diskMaxBytes);
+
+        prepareDirectory();
+
+        this.memoryHits = meterRegistry.counter("gateway.assets.requests", "result", "memory");
+        this.diskHits = meterRegistry.counter("gateway.assets.requests", "result", "disk");
+        this.misses = meterRegistry.counter("gateway.assets.requests", "result", "miss");
+        Gauge.builder("gateway.assets.entries", this, c -> c.entries(true)).tag("tier", "memory").register(meterRegistry);
+        Gauge.builder("gateway.assets.entries", this, c -> c.entries(false)).tag("tier", "disk").register(meterRegistry);
+        Gauge.builder("gateway.assets.bytes", this, c -> c.bytes(true)).tag("tier", "memory")
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("gateway.assets.bytes", this, c -> c.bytes(false)).tag("tier", "disk")
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    public long getMaxEntryBytes() {
+        return Math.max(memoryMaxEntryBytes, diskMaxEntryBytes);
+    }
+
+    /**
+     * The cached asset, or null. A disk hit is pinned: the caller must {@link #release} it once
+     * the file is no longer read.
+     */
+    public synchronized Asset lookup(String key) {
+        Asset asset = memory.get(key);
+        if (asset != null) {
+            memoryHits.increment();
+            return asset;
+        }
+        asset = disk.get(key);
+        if (asset != null) {
+            diskHits.increment();
+            readers.merge(asset.file(), 1, Integer::sum);
+            return asset;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Unpin a disk hit; deletes its file if it was evicted or replaced meanwhile.
+     */
+    public synchronized void release(Asset asset) {
+        if (asset.inMemory()) {
+            return;
+        }
+        Integer remaining = readers.computeIfPresent(asset.file(), (file, count) -> count > 1 ? count - 1 : null);
+        if (remaining == null && pendingDeletes.remove(asset.file())) {
+            deleteQuietly(asset.file());
+        }
+    }
+
+    /**
+     * Store an asset; small bodies go to memory right away, larger ones are written to disk
+     * in the background.
+     */
+    public void put(String key, HttpHeaders headers, byte[] body) {
+        if (body.length <= memoryMaxEntryBytes) {
+            putInMemory(key, new Asset(headers, body.length, body, null));
+            return;
+        }
+        if (body.length > diskMaxEntryBytes) {
+            log.debug("Asset cache: not caching {} ({} bytes exceeds entry limit)", key, body.length);
+            return;
+        }
+
+        Mono.fromCallable(() -> writeFile(body))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(
+                        file -> putOnDisk(key, new Asset(headers, body.length, null, file)),
+                        e -> log.warn("Asset cache: failed to write {}: {}", key, e.getMessage()));
+    }
+
+    private synchronized void putInMemory(String key, Asset asset) {
+        Asset previous = memory.put(key, asset);
+        if (previous != null) {
+            memoryBytes -= previous.length();
+        }
+        memoryBytes += asset.length();
+
+        Iterator<Asset> eldest = memory.values().iterator();
+        while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void putOnDisk(String key, Asset asset) {
+        Asset previous = disk.put(key, asset);
+        if (previous != null) {
+            diskBytes -= previous.length();
+            discard(previous.file());
+        }
+        diskBytes += asset.length();
+
+        Iterator<Map.Entry<String, Asset>> eldest = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && eldest.hasNext()) {
+            Asset evicted = eldest.next().getValue();
+            eldest.remove();
+            diskBytes -= evicted.length();
+            discard(evicted.file());
+        }
+    }
+
+    // Delete now, or after the last reader released it
+    private void discard(Path file) {
+        if (readers.containsKey(file)) {
+            pendingDeletes.add(file);
+        } else {
+            deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Drop a disk entry whose file could not be opened; a newer entry for the key is kept.
+     */
+    public synchronized void evict(String key, Asset asset) {
+        if (disk.remove(key, asset)) {
+            diskBytes -= asset.length();
+            discard(asset.file());
+        }
+    }
+
+    public synchronized int entries(boolean inMemory) {
+        return inMemory ? memory.size() : disk.size();
+    }
+
+    public synchronized long bytes(boolean inMemory) {
+        return inMemory ? memoryBytes : diskBytes;
+    }
+
+    private Path writeFile(byte[] body) throws IOException {
+        // A new file per write: readers of a replaced entry keep reading the old one
+        Path file = Files.createTempFile(directory, "asset-", FILE_SUFFIX);
+        try {
+            return Files.write(file, body);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    private void prepareDirectory() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + ",.tmp}")) {
+                for (Path file : stale) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare asset cache directory " + directory, e);
+        }
+        log.info("Asset cache directory: {}", directory);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Asset cache: could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.pesexpo.apigateway.cache;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.util.Set;
+
+/**
+ * Immutable snapshot of an upstream response (status, headers, body)
+ * that can be replayed to any number of clients.
+ */
+public record CachedResponse(
+        HttpStatusCode status,
+        HttpHeaders headers,
+        byte[] body,
+        long storedAtNanos
+) {
+
+    // Headers that belong to one connection/client and must never be replayed
+    private static final Set<String> EXCLUDED_HEADERS = Set.of(
+            HttpHeaders.SET_COOKIE.toLowerCase(),
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(),
+            HttpHeaders.CONNECTION.toLowerCase(),
+            HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+            "keep-alive"
+    );
+
+    public static CachedResponse of(HttpStatusCode status, HttpHeaders source, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        source.forEach((name, values) -> {
+            if (!EXCLUDED_HEADERS.contains(name.toLowerCase())) {
+                headers.addAll(name, values);
+            }
+        });
+        return new CachedResponse(status, HttpHeaders.readOnlyHttpHeaders(headers), body, System.nanoTime());
+    }
+
+    public long ageNanos() {
+        return System.nanoTime() - storedAtNanos;
+    }
+
+    /**
+     * Approximate heap cost used for byte-bounded eviction.
+     */
+    public long weight() {
+        return body.length + headers.size() * 64L;
+    }
+}
@@ -0,0 +1,84 @@
+package com.pesexpo.apigateway.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Response decorator that streams the body to the client unchanged while
+ * copying it aside, so it can be cached or shared once the body completes.
+ *
+ * - Nothing is captured if {@link #shouldCapture()} returns false
+ * - Capturing stops (and the body is still streamed) once {@code maxBytes} is exceeded
+ */
+public abstract class CapturingResponseDecorator extends ServerHttpResponseDecorator {
+
+    private final long maxBytes;
+
+    protected CapturingResponseDecorator(ServerHttpResponse delegate, long maxBytes) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Decide from status and headers (already set by the routing filter) whether to capture.
+     */
+    protected abstract boolean shouldCapture();
+
+    /**
+     * Called once with the complete body after it has been written through. The headers are
+     * a snapshot taken when the body write started, before outer decorators (e.g. compression)
+     * rewrote them for this client.
+     */
+    protected abstract void onCaptured(HttpStatusCode status, HttpHeaders headers, byte[] body);
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (!shouldCapture()) {
+            return super.writeWith(body);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(getHeaders());
+        ByteArrayOutputStream[] captured = {new ByteArrayOutputStream()};
+
+        Flux<DataBuffer> tapped = Flux.from(body)
+                .map(buffer -> {
+                    ByteArrayOutputStream out = captured[0];
+                    if (out != null) {
+                        int length = buffer.readableByteCount();
+                        if (out.size() + length > maxBytes) {
+                            captured[0] = null;
+                        } else {
+                            int position = buffer.readPosition();
+                            byte[] chunk = new byte[length];
+                            buffer.read(chunk);
+                            buffer.readPosition(position);
+                            out.write(chunk, 0, length);
+                        }
+                    }
+                    return buffer;
+                });
+
+        return super.writeWith(tapped)
+                .doOnSuccess(v -> {
+                    ByteArrayOutputStream out = captured[0];
+                    HttpStatusCode status = getStatusCode();
+                    if (out != null && status != null) {
+                        onCaptured(status, headers, out.toByteArray());
+                    }
+                });
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return writeWith(Flux.from(body).flatMapSequential(p -> p));
+    }
+}
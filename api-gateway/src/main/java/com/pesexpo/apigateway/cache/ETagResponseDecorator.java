@@ -0,0 +1,166 @@
+package com.pesexpo.apigateway.cache;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Response decorator adding a strong ETag to 200 JSON responses and turning them into
+ * 304 Not Modified when the client's If-None-Match already has it
+ *
+ * - The body is hashed chunk by chunk as it arrives (no copy), and held until complete,
+ *   because the ETag header must precede the body
+ * - Bodies over maxBytes, and streamed (flushed) bodies, are passed on without an ETag
+ * - An ETag set upstream (or replayed from the response cache) is used as is, without hashing
+ * - If-None-Match uses the weak comparison (RFC 9110), so W/ tags produced by compression match
+ */
+public class ETagResponseDecorator extends ServerHttpResponseDecorator {
+
+    private final List<String> ifNoneMatch;
+    private final long maxBytes;
+    private final Consumer<Boolean> onResult;
+
+    /**
+     * @param onResult called with true when a 304 was sent, false when a full body was sent
+     */
+    public ETagResponseDecorator(ServerHttpResponse delegate, List<String> ifNoneMatch,
+                                 long maxBytes, Consumer<Boolean> onResult) {
+        super(delegate);
+        this.ifNoneMatch = ifNoneMatch;
+        this.maxBytes = maxBytes;
+        this.onResult = onResult;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (!HttpStatus.OK.equals(getStatusCode())) {
+            return super.writeWith(body);
+        }
+
+        String etag = getHeaders().getETag();
+        if (etag != null) {
+            return matches(etag) ? notModified(body) : sent(super.writeWith(body));
+        }
+        if (!isTaggable(getHeaders())) {
+            return super.writeWith(body);
+        }
+
+        MessageDigest digest = sha256();
+        long[] seen = {0};
+
+        // One batch with the whole body, or (once over maxBytes) the head and then single buffers
+        return Flux.from(body)
+                .bufferUntil(buffer -> {
+                    if (seen[0] <= maxBytes) {
+                        update(digest, buffer);
+                    }
+                    seen[0] += buffer.readableByteCount();
+                    return seen[0] > maxBytes;
+                })
+                .switchOnFirst((first, batches) -> {
+                    if (!first.hasValue() || seen[0] > maxBytes) {
+                        return super.writeWith(batches.concatMapIterable(batch -> batch));
+                    }
+
+                    List<? extends DataBuffer> complete = first.get();
+                    String computed = formatETag(digest);
+                    getHeaders().setETag(computed);
+                    return matches(computed)
+                            ? notModified(Flux.fromIterable(complete))
+                            : sent(super.writeWith(Flux.fromIterable(complete)));
+                })
+                .then();
+    }
+
+    /**
+     * The strong ETag this decorator would compute for {@code body}, for responses tagged ahead of it
+     * (e.g. when stored in the response cache).
+     */
+    public static String strongETag(byte[] body) {
+        MessageDigest digest = sha256();
+        digest.update(body);
+        return formatETag(digest);
+    }
+
+    /**
+     * Whether a 200 response with these headers gets a computed ETag (JSON, storable).
+     */
+    public static boolean isTaggable(HttpHeaders headers) {
+        return isJson(headers.getContentType()) && !isNoStore(headers.getCacheControl());
+    }
+
+    private static String formatETag(MessageDigest digest) {
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    private Mono<Void> notModified(Publisher<? extends DataBuffer> body) {
+        HttpHeaders headers = getHeaders();
+        setStatusCode(HttpStatus.NOT_MODIFIED);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+        onResult.accept(true);
+        return Flux.from(body)
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.defer(this::setComplete));
+    }
+
+    private Mono<Void> sent(Mono<Void> write) {
+        onResult.accept(false);
+        return write;
+    }
+
+    private boolean matches(String etag) {
+        String opaque = opaqueTag(etag);
+        for (String value : ifNoneMatch) {
+            for (String candidate : value.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || opaqueTag(tag).equals(opaque)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static void update(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                digest.update(iterator.next());
+            }
+        }
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return contentType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                || contentType.getSubtype().endsWith("+json"));
+    }
+
+    private static boolean isNoStore(String cacheControl) {
+        return cacheControl != null && cacheControl.contains("no-store");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.pesexpo.apigateway.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory response cache for gateway routes
+ *
+ * - Entries are fresh for {@code ttl}, then served stale for {@code staleWhileRevalidate}
+ *   while exactly one request goes upstream to refresh the entry
+ * - Total size is bounded in bytes; least recently used entries are evicted first
+ * - Entries can be invalidated by resource path (used on writes); every invalidation bumps a
+ *   generation, and a response fetched under an older generation is not stored, so a read
+ *   racing a write cannot put the pre-write body back
+ */
+@Slf4j
+public class ResponseCache {
+
+    public enum State { FRESH, STALE, MISS }
+
+    public record Lookup(State state, CachedResponse response) {
+
+        private static final Lookup MISS = new Lookup(State.MISS, null);
+    }
+
+    private record Entry(String path, CachedResponse response, boolean revalidating) {
+
+        Entry revalidating(boolean flag) {
+            return new Entry(path, response, flag);
+        }
+    }
+
+    private final String name;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    // Access-ordered map = LRU iteration order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private long generation;
+
+    private final Counter hits;
+    private final Counter staleHits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter invalidations;
+
+    public ResponseCache(String name, Duration ttl, Duration staleWhileRevalidate,
+                         long maxBytes, long maxEntryBytes, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = staleWhileRevalidate.toNanos();
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.staleHits = requestCounter(meterRegistry, "stale");
+        this.misses = requestCounter(meterRegistry, "miss");
+        this.evictions = Counter.builder("gateway.cache.evictions")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("gateway.cache.invalidations")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.size", this, ResponseCache::size)
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.cache.bytes", this, ResponseCache::bytes)
+                .tag("cache", name)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.cache.requests")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Look up a key. A stale entry is handed out as MISS to exactly one caller,
+     * which is then responsible for refreshing it (or calling {@link #endRevalidation}).
+     */
+    public synchronized Lookup lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return Lookup.MISS;
+        }
+
+        long age = entry.response().ageNanos();
+        if (age < ttlNanos) {
+            hits.increment();
+            return new Lookup(State.FRESH, entry.response());
+        }
+
+        if (age < ttlNanos + staleNanos) {
+            if (!entry.revalidating()) {
+                entries.put(key, entry.revalidating(true));
+                misses.increment();
+                return Lookup.MISS;
+            }
+            staleHits.increment();
+            return new Lookup(State.STALE, entry.response());
+        }
+
+        remove(key, entry);
+        misses.increment();
+        return Lookup.MISS;
+    }
+
+    /**
+     * Current invalidation generation; take it before going upstream and pass it to {@link #put}.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void put(String key, String path, CachedResponse response, long fetchedGeneration) {
+        if (fetchedGeneration != generation) {
+            log.debug("Cache [{}]: not caching {} (invalidated while in flight)", name, key);
+            return;
+        }
+
+        long weight = response.weight();
+        if (weight > maxEntryBytes) {
+            log.debug("Cache [{}]: not caching {} ({} bytes exceeds entry limit)", name, key, weight);
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(path, response, false));
+        if (previous != null) {
+            totalBytes -= previous.response().weight();
+        }
+        totalBytes += weight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= evicted.response().weight();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Release the revalidation claim on a stale entry if the refresh did not store a new response.
+     */
+    public synchronized void endRevalidation(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.revalidating()) {
+            entries.put(key, entry.revalidating(false));
+        }
+    }
+
+    /**
+     * Drop every entry for the given resource path, its sub-resources and its parent collection.
+     */
+    public synchronized void invalidate(String path) {
+        generation++;
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        String parent = path.substring(0, Math.max(path.lastIndexOf('/'), 0));
+        String children = path + "/";
+        int removed = 0;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            String entryPath = entry.path();
+            if (entryPath.equals(path) || entryPath.equals(parent) || entryPath.startsWith(children)) {
+                it.remove();
+                totalBytes -= entry.response().weight();
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            invalidations.increment(removed);
+            log.debug("Cache [{}]: invalidated {} entries for {}", name, removed, path);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return totalBytes;
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.response().weight();
+    }
+}
@@ -0,0 +1,130 @@
+package com.pesexpo.apigateway.compression;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Response decorator that gzips the body chunk by chunk as it is written
+ *
+ * - Decided once, when the body is written: compressible content type, no Content-Encoding
+ *   yet, and a Content-Length at or above minSize (unknown length counts as large)
+ * - Content-Length is dropped (chunked), Vary: Accept-Encoding added, a strong ETag made weak
+ * - Whole bodies are never buffered; see GzipChunkEncoder. writeWith bodies are deflated as
+ *   one stream, writeAndFlushWith bodies are flushed with every chunk the upstream flushed
+ */
+public class CompressingResponseDecorator extends ServerHttpResponseDecorator {
+
+    private final List<MediaType> compressibleTypes;
+    private final long minSize;
+    private final int level;
+    private final BiConsumer<Long, Long> onCompressed;
+
+    public CompressingResponseDecorator(ServerHttpResponse delegate, List<MediaType> compressibleTypes,
+                                        long minSize, int level, BiConsumer<Long, Long> onCompressed) {
+        super(delegate);
+        this.compressibleTypes = compressibleTypes;
+        this.minSize = minSize;
+        this.level = level;
+        this.onCompressed = onCompressed;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        if (!shouldCompress()) {
+            return super.writeWith(body);
+        }
+        prepareHeaders();
+
+        return Mono.using(
+                () -> new GzipChunkEncoder(level),
+                encoder -> super.writeWith(Flux.concat(
+                        Flux.from(body).<DataBuffer>handle((buffer, sink) -> {
+                            // Not flushed: output only when a deflate block fills up
+                            byte[] encoded = encode(encoder, buffer, false);
+                            if (encoded.length > 0) {
+                                sink.next(bufferFactory().wrap(encoded));
+                            }
+                        }),
+                        Mono.fromSupplier(() -> finish(encoder)))),
+                GzipChunkEncoder::close);
+    }
+
+    @Override
+    public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        if (!shouldCompress()) {
+            return super.writeAndFlushWith(body);
+        }
+        prepareHeaders();
+
+        // Streamed bodies (SSR): every flushed chunk is decodable on arrival
+        return Mono.using(
+                () -> new GzipChunkEncoder(level),
+                encoder -> super.writeAndFlushWith(Flux.<Publisher<DataBuffer>>concat(
+                        Flux.from(body).map(chunk -> Flux.from(chunk)
+                                .map(buffer -> bufferFactory().wrap(encode(encoder, buffer, true)))),
+                        Mono.fromSupplier(() -> Mono.fromSupplier(() -> finish(encoder))))),
+                GzipChunkEncoder::close);
+    }
+
+    private boolean shouldCompress() {
+        HttpHeaders headers = getHeaders();
+        HttpStatusCode status = getStatusCode();
+        if (status != null && (status.isSameCodeAs(HttpStatus.NO_CONTENT) || status.isSameCodeAs(HttpStatus.NOT_MODIFIED))) {
+            return false;
+        }
+        if (headers.getFirst(HttpHeaders.CONTENT_ENCODING) != null) {
+            return false;
+        }
+        long contentLength = headers.getContentLength();
+        if (contentLength >= 0 && contentLength < minSize) {
+            return false;
+        }
+        MediaType contentType = headers.getContentType();
+        return contentType != null && compressibleTypes.stream().anyMatch(type -> type.includes(contentType));
+    }
+
+    private void prepareHeaders() {
+        HttpHeaders headers = getHeaders();
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        List<String> vary = headers.getVary();
+        if (vary.stream().noneMatch(v -> v.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING))) {
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        // Different bytes: a strong validator no longer applies
+        String etag = headers.getETag();
+        if (etag != null && !etag.startsWith("W/")) {
+            headers.setETag("W/" + etag);
+        }
+    }
+
+    private static byte[] encode(GzipChunkEncoder encoder, DataBuffer buffer, boolean flush) {
+        try {
+            byte[] chunk = new byte[buffer.readableByteCount()];
+            buffer.read(chunk);
+            return encoder.encode(chunk, flush);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private DataBuffer finish(GzipChunkEncoder encoder) {
+        DataBuffer trailer = bufferFactory().wrap(encoder.finish());
+        onCompressed.accept(encoder.getBytesIn(), encoder.getBytesOut());
+        return trailer;
+    }
+}
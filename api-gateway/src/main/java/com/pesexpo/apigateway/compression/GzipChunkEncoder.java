@@ -0,0 +1,110 @@
+package com.pesexpo.apigateway.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Incremental gzip encoder (RFC 1952) for one response body
+ *
+ * - Chunks are deflated without flushing by default, so deflate blocks span chunk boundaries
+ *   and compress as well as a one-shot gzip; output may lag behind the input
+ * - Flushed chunks are SYNC_FLUSHed: the client can decode everything up to there as it
+ *   arrives (streamed SSR HTML keeps rendering progressively)
+ * - Only a 32 KB deflate window plus the current chunk are held in memory
+ * - {@link #finish()} emits the remaining deflate output and the gzip trailer;
+ *   {@link #close()} must always be called to free the native deflater
+ */
+public class GzipChunkEncoder implements AutoCloseable {
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b,  // magic
+            Deflater.DEFLATED,  // compression method
+            0,                  // flags
+            0, 0, 0, 0,         // mtime
+            0,                  // extra flags
+            (byte) 0xff         // OS unknown
+    };
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[8192];
+
+    private boolean headerWritten;
+    private long bytesIn;
+    private long bytesOut;
+
+    public GzipChunkEncoder(int level) {
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Deflate a chunk; with {@code flush} the output ends on a byte boundary the client can
+     * decode up to, otherwise it may be empty.
+     */
+    public byte[] encode(byte[] chunk, boolean flush) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.length / 2 + 64);
+        writeHeaderOnce(out);
+
+        crc.update(chunk);
+        bytesIn += chunk.length;
+        deflater.setInput(chunk);
+        drain(out, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+
+        bytesOut += out.size();
+        return out.toByteArray();
+    }
+
+    public byte[] finish() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeHeaderOnce(out);
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(scratch, 0, scratch.length, Deflater.NO_FLUSH);
+            out.write(scratch, 0, n);
+        }
+        writeIntLe(out, (int) crc.getValue());
+        writeIntLe(out, (int) bytesIn);
+
+        bytesOut += out.size();
+        return out.toByteArray();
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    // Until all input is consumed and, with SYNC_FLUSH, a partially filled scratch buffer shows
+    // the flush is complete; with NO_FLUSH the deflater keeps the rest for the next block
+    private void drain(ByteArrayOutputStream out, int flush) {
+        int n;
+        do {
+            n = deflater.deflate(scratch, 0, scratch.length, flush);
+            out.write(scratch, 0, n);
+        } while (n == scratch.length || !deflater.needsInput());
+    }
+
+    private void writeHeaderOnce(ByteArrayOutputStream out) {
+        if (!headerWritten) {
+            out.write(HEADER, 0, HEADER.length);
+            headerWritten = true;
+        }
+    }
+
+    private static void writeIntLe(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,93 @@
+package com.pesexpo.apigateway.config;
+
+import com.pesexpo.apigateway.cache.AssetCache;
+import com.pesexpo.apigateway.cache.ResponseCache;
+import com.pesexpo.apigateway.filter.AssetCacheGatewayFilter;
+import com.pesexpo.apigateway.filter.PageMicroCacheGatewayFilter;
+import com.pesexpo.apigateway.filter.ResponseCacheGatewayFilter;
+import com.pesexpo.apigateway.security.CredentialedRequests;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Gateway-side response caches
+ *
+ * - productResponseCache: catalog GETs on /api/v1/products/** (not user-specific); responses
+ *   to credentialed requests are stored only when the service marks them public
+ *   invalidated by MicroserviceSecurityFilter on POST/PUT/DELETE
+ * - assetCache: immutable Next.js static assets (memory + disk), never invalidated
+ * - pageMicroCache: anonymous SSR renders on nextjs-pages for a few seconds (absorbs spikes)
+ */
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public ResponseCache productResponseCache(
+            @Value("${app.cache.products.ttl:30s}") Duration ttl,
+            @Value("${app.cache.products.stale-while-revalidate:60s}") Duration staleWhileRevalidate,
+            @Value("${app.cache.products.max-size:32MB}") DataSize maxSize,
+            @Value("${app.cache.products.max-entry-size:1MB}") DataSize maxEntrySize,
+            MeterRegistry meterRegistry) {
+        return new ResponseCache("products", ttl, staleWhileRevalidate,
+                maxSize.toBytes(), maxEntrySize.toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public ResponseCacheGatewayFilter productResponseCacheFilter(
+            @Qualifier("productResponseCache") ResponseCache productResponseCache,
+            CredentialedRequests credentialedRequests) {
+        return new ResponseCacheGatewayFilter(productResponseCache, List.of(
+                HttpHeaders.ACCEPT,
+                HttpHeaders.ACCEPT_ENCODING,
+                HttpHeaders.ACCEPT_LANGUAGE
+        ), credentialedRequests);
+    }
+
+    @Bean
+    public AssetCache assetCache(
+            @Value("${app.cache.assets.directory:var/gateway-asset-cache}") Path directory,
+            @Value("${app.cache.assets.memory-max-size:64MB}") DataSize memoryMaxSize,
+            @Value("${app.cache.assets.memory-max-entry-size:256KB}") DataSize memoryMaxEntrySize,
+            @Value("${app.cache.assets.disk-max-size:1GB}") DataSize diskMaxSize,
+            @Value("${app.cache.assets.disk-max-entry-size:20MB}") DataSize diskMaxEntrySize,
+            MeterRegistry meterRegistry) {
+        return new AssetCache(directory, memoryMaxSize.toBytes(), memoryMaxEntrySize.toBytes(),
+                diskMaxSize.toBytes(), diskMaxEntrySize.toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public AssetCacheGatewayFilter assetCacheFilter(
+            AssetCache assetCache,
+            @Value("${app.cache.assets.immutable-paths:/_next/static/**}") List<String> immutablePaths,
+            @Value("${app.cache.assets.cache-control:public, max-age=31536000, immutable}") String cacheControl) {
+        return new AssetCacheGatewayFilter(assetCache, immutablePaths, cacheControl);
+    }
+
+    @Bean
+    public ResponseCache pageMicroCache(
+            @Value("${app.cache.pages.ttl:2s}") Duration ttl,
+            @Value("${app.cache.pages.stale-while-revalidate:3s}") Duration staleWhileRevalidate,
+            @Value("${app.cache.pages.max-size:64MB}") DataSize maxSize,
+            @Value("${app.cache.pages.max-entry-size:1MB}") DataSize maxEntrySize,
+            MeterRegistry meterRegistry) {
+        return new ResponseCache("pages", ttl, staleWhileRevalidate,
+                maxSize.toBytes(), maxEntrySize.toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public PageMicroCacheGatewayFilter pageMicroCacheFilter(
+            @Qualifier("pageMicroCache") ResponseCache pageMicroCache,
+            CredentialedRequests credentialedRequests,
+            @Value("${app.cache.pages.locale-cookie:NEXT_LOCALE}") String localeCookie) {
+        return new PageMicroCacheGatewayFilter(pageMicroCache, credentialedRequests, localeCookie);
+    }
+}
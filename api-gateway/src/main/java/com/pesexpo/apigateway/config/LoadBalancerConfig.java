@@ -0,0 +1,19 @@
+package com.pesexpo.apigateway.config;
+
+import com.pesexpo.apigateway.loadbalancer.LatencyAwareLoadBalancerConfiguration;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Latency-aware load balancing for the microservice routes (lb://PRODUCT-SERVICE, lb://ORDER-SERVICE)
+ *
+ * Other load-balanced clients keep the Spring Cloud default (round robin).
+ */
+@Configuration
+@LoadBalancerClients({
+        @LoadBalancerClient(name = "PRODUCT-SERVICE", configuration = LatencyAwareLoadBalancerConfiguration.class),
+        @LoadBalancerClient(name = "ORDER-SERVICE", configuration = LatencyAwareLoadBalancerConfiguration.class)
+})
+public class LoadBalancerConfig {
+}
@@ -0,0 +1,45 @@
+package com.pesexpo.apigateway.config;
+
+import com.pesexpo.apigateway.service.CoalescingRefreshTokenAuthorizedClientProvider;
+import com.pesexpo.apigateway.service.TokenRefreshCoalescer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+
+import java.time.Duration;
+
+/**
+ * OAuth2 client wiring for the BFF
+ *
+ * The authorized client manager is picked up by tokenRelay() and @RegisteredOAuth2AuthorizedClient.
+ * Its refresh_token provider is coalesced per principal (see TokenRefreshCoalescer).
+ */
+@Configuration
+public class OAuth2ClientConfig {
+
+    @Bean
+    public ReactiveOAuth2AuthorizedClientManager authorizedClientManager(
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+            TokenRefreshCoalescer tokenRefreshCoalescer,
+            @Value("${app.oauth2.token-refresh.clock-skew:60s}") Duration clockSkew) {
+
+        ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider = ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
+                .authorizationCode()
+                .provider(new CoalescingRefreshTokenAuthorizedClientProvider(tokenRefreshCoalescer, clockSkew))
+                .clientCredentials()
+                .build();
+
+        DefaultReactiveOAuth2AuthorizedClientManager authorizedClientManager =
+                new DefaultReactiveOAuth2AuthorizedClientManager(clientRegistrationRepository, authorizedClientRepository);
+        authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+
+        return authorizedClientManager;
+    }
+}
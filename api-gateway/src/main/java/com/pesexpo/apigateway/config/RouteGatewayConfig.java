@@ -1,11 +1,24 @@
 package com.pesexpo.apigateway.config;
 
+import com.pesexpo.apigateway.filter.AssetCacheGatewayFilter;
+import com.pesexpo.apigateway.filter.CircuitBreakerBulkheadGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.CompressionGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.ConditionalGetGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.HedgingGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.PageMicroCacheGatewayFilter;
+import com.pesexpo.apigateway.filter.RateLimiterGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.RequestCoalescingGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.RetryBudgetGatewayFilterFactory;
+import com.pesexpo.apigateway.filter.ResponseCacheGatewayFilter;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.route.RouteLocator;
-import org.springframework.cloud.gateway.route.builder.GatewayFilterSpec;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 /**
  * Route Configuration for BFF Behind Gateway Pattern
@@ -22,21 +35,122 @@ public class RouteGatewayConfig {
     @Value("${app.frontend.url:http://localhost:3000}")
     private String frontendUrl;
 
+    @Value("${app.coalescing.max-body-size:512KB}")
+    private DataSize coalescingMaxBodySize;
+
+    @Value("${app.rate-limit.products.replenish-rate:50}")
+    private double productsReplenishRate;
+
+    @Value("${app.rate-limit.products.burst-capacity:100}")
+    private long productsBurstCapacity;
+
+    @Value("${app.rate-limit.orders.replenish-rate:20}")
+    private double ordersReplenishRate;
+
+    @Value("${app.rate-limit.orders.burst-capacity:40}")
+    private long ordersBurstCapacity;
+
+    @Value("${app.rate-limit.bff.replenish-rate:50}")
+    private double bffReplenishRate;
+
+    @Value("${app.rate-limit.bff.burst-capacity:100}")
+    private long bffBurstCapacity;
+
+    @Value("${app.resilience.products.max-concurrent-calls:200}")
+    private int productsMaxConcurrentCalls;
+
+    @Value("${app.resilience.products.slow-call-duration:2s}")
+    private Duration productsSlowCallDuration;
+
+    @Value("${app.resilience.orders.max-concurrent-calls:100}")
+    private int ordersMaxConcurrentCalls;
+
+    @Value("${app.resilience.orders.slow-call-duration:3s}")
+    private Duration ordersSlowCallDuration;
+
+    @Value("${app.hedging.products.percentile:95}")
+    private double productsHedgePercentile;
+
+    @Value("${app.hedging.products.max-delay:1s}")
+    private Duration productsHedgeMaxDelay;
+
+    @Value("${app.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${app.retry.backoff:50ms}")
+    private Duration retryBackoff;
+
+    @Value("${app.retry.budget-percent:10}")
+    private double retryBudgetPercent;
+
+    @Value("${app.compression.min-size:1KB}")
+    private DataSize compressionMinSize;
+
+    @Value("${app.compression.level:4}")
+    private int compressionLevel;
+
+    @Value("${app.conditional-get.max-body-size:1MB}")
+    private DataSize conditionalGetMaxBodySize;
+
     @Bean
-    public RouteLocator customRouteLocator(RouteLocatorBuilder builder) {
+    public RouteLocator customRouteLocator(
+            RouteLocatorBuilder builder,
+            @Qualifier("productResponseCacheFilter") ResponseCacheGatewayFilter productResponseCacheFilter,
+            AssetCacheGatewayFilter assetCacheFilter,
+            PageMicroCacheGatewayFilter pageMicroCacheFilter,
+            RequestCoalescingGatewayFilterFactory coalescingFilterFactory,
+            RateLimiterGatewayFilterFactory rateLimiterFilterFactory,
+            CircuitBreakerBulkheadGatewayFilterFactory circuitBreakerFilterFactory,
+            HedgingGatewayFilterFactory hedgingFilterFactory,
+            RetryBudgetGatewayFilterFactory retryFilterFactory,
+            CompressionGatewayFilterFactory compressionFilterFactory,
+            ConditionalGetGatewayFilterFactory conditionalGetFilterFactory) {
+
+        // Opt-in single-flight for GETs whose response is the same for every caller
+        RequestCoalescingGatewayFilterFactory.Config coalescing = new RequestCoalescingGatewayFilterFactory.Config();
+        coalescing.setMaxBodySize(coalescingMaxBodySize);
+
+        // Opt-in hedging for idempotent catalog GETs (tail latency of GET /api/v1/products/{uuid})
+        HedgingGatewayFilterFactory.Config productHedging = new HedgingGatewayFilterFactory.Config();
+        productHedging.setName("product-service");
+        productHedging.setPercentile(productsHedgePercentile);
+        productHedging.setMaxDelay(productsHedgeMaxDelay);
+
         return builder.routes()
 
                 // MICROSERVICES API ROUTES (direct access with TokenRelay)
-                // Product Service
+                // Product Service (rate limited, catalog GETs cached, concurrent misses coalesced,
+                // circuit breaker + bulkhead in front of the upstream, slow GETs hedged,
+                // budgeted retries of idempotent requests, gzip for clients that accept it,
+                // ETag / 304 for unchanged GETs)
                 .route("product-service", r -> r
                         .path("/api/v1/products/**")
-                        .filters(GatewayFilterSpec::tokenRelay)
+                        .filters(f -> f
+                                .filter(compressionFilterFactory.apply(compression("product-service")))
+                                .filter(rateLimiterFilterFactory.apply(
+                                        rateLimit(productsReplenishRate, productsBurstCapacity)))
+                                .filter(conditionalGetFilterFactory.apply(conditionalGet("product-service")))
+                                .filter(productResponseCacheFilter)
+                                .filter(coalescingFilterFactory.apply(coalescing))
+                                .filter(circuitBreakerFilterFactory.apply(circuitBreaker(
+                                        "product-service", productsMaxConcurrentCalls, productsSlowCallDuration)))
+                                .filter(hedgingFilterFactory.apply(productHedging))
+                                .filter(retryFilterFactory.apply(retry("product-service")))
+                                .tokenRelay())
                         .uri("lb://PRODUCT-SERVICE"))
 
-                // Order Service
+                // Order Service (rate limited, circuit breaker + bulkhead, budgeted retries, gzip, ETag / 304)
                 .route("order-service", r -> r
                         .path("/api/v1/orders/**")
-                        .filters(GatewayFilterSpec::tokenRelay)
+                        .filters(f -> f
+                                .filter(compressionFilterFactory.apply(compression("order-service")))
+                                .filter(rateLimiterFilterFactory.apply(
+                                        rateLimit(ordersReplenishRate, ordersBurstCapacity)))
+                                .filter(conditionalGetFilterFactory.apply(conditionalGet("order-service")))
+                                .filter(circuitBreakerFilterFactory.apply(circuitBreaker(
+                                        "order-service", ordersMaxConcurrentCalls, ordersSlowCallDuration)))
+                                .filter(retryFilterFactory.apply(retry("order-service")))
+                                .tokenRelay())
                         .uri("lb://ORDER-SERVICE"))
 
                 // BFF ROUTE - Browser → Gateway → NextJS BFF
@@ -44,24 +158,72 @@ public class RouteGatewayConfig {
                 .route("nextjs-bff", r -> r
                         .path("/bff/**")
                         .filters(f -> f
+                                .filter(compressionFilterFactory.apply(compression("nextjs-bff")))
+                                .filter(rateLimiterFilterFactory.apply(
+                                        rateLimit(bffReplenishRate, bffBurstCapacity)))
                                 .tokenRelay()
                                 .rewritePath("/bff(?<segment>/?.*)", "${segment}"))
                         .uri(frontendUrl))
 
-                // NEXTJS STATIC ASSETS
+                // NEXTJS STATIC ASSETS (immutable assets served from the gateway asset cache)
                 .route("nextjs-static", r -> r
                         .path("/_next/**", "/favicon.ico", "/images/**", "/fonts/**")
+                        .filters(f -> f.filter(assetCacheFilter))
                         .uri(frontendUrl))
 
                 // NEXTJS PAGES (SSR) - catch-all (must be last)
+                // Anonymous renders micro-cached ahead of tokenRelay
 //                 Temporarily disabled to test logout - if logout works, the .not() predicate is broken
                  .route("nextjs-pages", r -> r
                          .path("/**")
                          .and()
                          .not(p -> p.path("/logout", "/logout-success", "/login", "/oauth2/**", "/error"))
-                         .filters(GatewayFilterSpec::tokenRelay)
+                         .filters(f -> f
+                                 .filter(compressionFilterFactory.apply(compression("nextjs-pages")))
+                                 .filter(pageMicroCacheFilter)
+                                 .tokenRelay())
                          .uri(frontendUrl))
 
                 .build();
     }
+
+    private static RateLimiterGatewayFilterFactory.Config rateLimit(double replenishRate, long burstCapacity) {
+        RateLimiterGatewayFilterFactory.Config config = new RateLimiterGatewayFilterFactory.Config();
+        config.setReplenishRate(replenishRate);
+        config.setBurstCapacity(burstCapacity);
+        return config;
+    }
+
+    private static CircuitBreakerBulkheadGatewayFilterFactory.Config circuitBreaker(
+            String name, int maxConcurrentCalls, Duration slowCallDuration) {
+        CircuitBreakerBulkheadGatewayFilterFactory.Config config = new CircuitBreakerBulkheadGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMaxConcurrentCalls(maxConcurrentCalls);
+        config.setSlowCallDuration(slowCallDuration);
+        return config;
+    }
+
+    private CompressionGatewayFilterFactory.Config compression(String name) {
+        CompressionGatewayFilterFactory.Config config = new CompressionGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMinSize(compressionMinSize);
+        config.setLevel(compressionLevel);
+        return config;
+    }
+
+    private ConditionalGetGatewayFilterFactory.Config conditionalGet(String name) {
+        ConditionalGetGatewayFilterFactory.Config config = new ConditionalGetGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMaxBodySize(conditionalGetMaxBodySize);
+        return config;
+    }
+
+    private RetryBudgetGatewayFilterFactory.Config retry(String name) {
+        RetryBudgetGatewayFilterFactory.Config config = new RetryBudgetGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMaxAttempts(retryMaxAttempts);
+        config.setBackoff(retryBackoff);
+        config.setBudgetPercent(retryBudgetPercent);
+        return config;
+    }
 }
@@ -1,16 +1,51 @@
 package com.pesexpo.apigateway.config;
 
+import com.pesexpo.apigateway.security.CachingReactiveJwtDecoder;
+import com.pesexpo.apigateway.security.UserContextSnapshotSuccessHandler;
+import com.pesexpo.apigateway.session.CookieAuthorizationRequestRepository;
+import com.pesexpo.apigateway.session.SessionCookieRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.DelegatingServerAuthenticationSuccessHandler;
 import org.springframework.security.web.server.authentication.RedirectServerAuthenticationSuccessHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.savedrequest.CookieServerRequestCache;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 @Slf4j
 @Configuration
@@ -24,9 +59,133 @@ public class SecurityConfig {
     @Value("${app.gateway.url:http://localhost:8888}")
     private String gatewayUrl;
 
+    // refresh, metrics and loadbalancer change or expose gateway internals
+    @Value("${app.security.actuator-authorities:ROLE_ADMIN}")
+    private String[] actuatorAuthorities;
+
+    // Present with app.session.store=cookie (see SessionConfig)
+    private final ObjectProvider<SessionCookieRepository> sessionCookieRepository;
+    private final ObjectProvider<CookieAuthorizationRequestRepository> cookieAuthorizationRequestRepository;
+
+    // Next.js static assets: public, identical for every user
+    static final String[] STATIC_PATHS = {"/_next/**", "/images/**", "/fonts/**", "/favicon.ico"};
+
+    // Reads of static assets (GET, and HEAD as browsers and CDNs send it) take the fast path
+    static final ServerWebExchangeMatcher STATIC_ASSET_READS = ServerWebExchangeMatchers.matchers(
+            ServerWebExchangeMatchers.pathMatchers(HttpMethod.GET, STATIC_PATHS),
+            ServerWebExchangeMatchers.pathMatchers(HttpMethod.HEAD, STATIC_PATHS));
+
+    // Only requests that actually carry a bearer token take the resource-server path
+    private static final ServerWebExchangeMatcher BEARER_REQUEST = exchange -> {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        return authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)
+                ? ServerWebExchangeMatcher.MatchResult.match()
+                : ServerWebExchangeMatcher.MatchResult.notMatch();
+    };
+
+    /**
+     * Fast path for static assets, matched before the main chain
+     *
+     * - No security context repository and no request cache: the WebSession is never
+     *   resolved, so the session store is not read (or its last-access time written)
+     * - No authorization, CSRF or anonymous filters: only the security response headers remain
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityWebFilterChain staticAssetsSecurityWebFilterChain(ServerHttpSecurity http) {
+        return http
+                .securityMatcher(STATIC_ASSET_READS)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .requestCache(cache -> cache.requestCache(NoOpServerRequestCache.getInstance()))
+                .anonymous(ServerHttpSecurity.AnonymousSpec::disable)
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .build();
+    }
+
+    /**
+     * Resource-server path for machine clients and mobile apps: /api/v1/** with Authorization: Bearer
+     *
+     * - Stateless: no session, no saved request; the token is the only credential
+     * - JWTs verified against the auth server's JWKS, each distinct token only once
+     *   (see CachingReactiveJwtDecoder); issuer must match and aud must name one of
+     *   app.security.bearer.audiences; authorities from the scope and roles claims
+     * - The token is forwarded upstream unchanged (tokenRelay only replaces it for browser logins)
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public SecurityWebFilterChain bearerTokenSecurityWebFilterChain(ServerHttpSecurity http,
+                                                                    CachingReactiveJwtDecoder bearerJwtDecoder) {
+        return http
+                .securityMatcher(ServerWebExchangeMatchers.matchers(
+                        ServerWebExchangeMatchers.pathMatchers("/api/v1/**"), BEARER_REQUEST))
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .requestCache(cache -> cache.requestCache(NoOpServerRequestCache.getInstance()))
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .authorizeExchange(exchange -> exchange.anyExchange().authenticated())
+                .oauth2ResourceServer(oauth2 -> oauth2
+                        .jwt(jwt -> jwt
+                                .jwtDecoder(bearerJwtDecoder)
+                                .jwtAuthenticationConverter(bearerAuthenticationConverter())))
+                .build();
+    }
+
+    @Bean
+    public CachingReactiveJwtDecoder bearerJwtDecoder(
+            @Value("${app.auth-server.url:http://localhost:9000}") String issuer,
+            @Value("${spring.security.oauth2.client.provider.auth-server.jwk-set-uri}") String jwkSetUri,
+            @Value("${app.security.bearer.audiences:api-gateway}") List<String> audiences,
+            @Value("${app.security.bearer.cache.max-entries:50000}") int maxEntries,
+            @Value("${app.security.bearer.cache.max-ttl:5m}") Duration maxTtl,
+            @Value("${app.security.bearer.cache.stripes:16}") int stripes,
+            MeterRegistry meterRegistry) {
+        NimbusReactiveJwtDecoder jwksDecoder = NimbusReactiveJwtDecoder.withJwkSetUri(jwkSetUri)
+                .jwsAlgorithm(SignatureAlgorithm.RS256)
+                .build();
+        // Tokens the auth server issued for other clients or resource servers are rejected
+        OAuth2TokenValidator<Jwt> audienceValidator = new JwtClaimValidator<List<String>>(
+                JwtClaimNames.AUD, aud -> aud != null && aud.stream().anyMatch(audiences::contains));
+        jwksDecoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                JwtValidators.createDefaultWithIssuer(issuer), audienceValidator));
+        return new CachingReactiveJwtDecoder(jwksDecoder, maxEntries, maxTtl, stripes, meterRegistry);
+    }
+
+    // SCOPE_* from the scope claim plus the auth server's roles claim (ROLE_*), as the route policies expect
+    private static Converter<Jwt, Mono<AbstractAuthenticationToken>> bearerAuthenticationConverter() {
+        JwtGrantedAuthoritiesConverter scopes = new JwtGrantedAuthoritiesConverter();
+        JwtGrantedAuthoritiesConverter roles = new JwtGrantedAuthoritiesConverter();
+        roles.setAuthoritiesClaimName("roles");
+        roles.setAuthorityPrefix("");
+
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(jwt -> {
+            Collection<GrantedAuthority> authorities = new ArrayList<>(scopes.convert(jwt));
+            authorities.addAll(roles.convert(jwt));
+            return authorities;
+        });
+        return new ReactiveJwtAuthenticationConverterAdapter(converter);
+    }
 
     @Bean
     public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        RedirectServerAuthenticationSuccessHandler redirectToHome =
+                new RedirectServerAuthenticationSuccessHandler(gatewayUrl + "/");
+        SessionCookieRepository cookieRepository = sessionCookieRepository.getIfAvailable();
+
+        // Stateless mode: login, saved request and pending authorization request in cookies,
+        // so the WebSession is never created; the UserContext is derived when the cookie is opened
+        if (cookieRepository != null) {
+            CookieServerRequestCache requestCache = new CookieServerRequestCache();
+            redirectToHome.setRequestCache(requestCache);
+            http.securityContextRepository(cookieRepository)
+                    .requestCache(cache -> cache.requestCache(requestCache));
+        }
+
         return http
                 // Disable Spring Security logout - using LogoutWebFilter
                 .logout(ServerHttpSecurity.LogoutSpec::disable)
@@ -42,22 +201,32 @@ public class SecurityConfig {
                                 "/oauth2/**",
                                 "/logout",
                                 "/logout-success",
-                                "/error",
-                                "/favicon.ico",
-                                // Next.js static assets
-                                "/_next/**",
-                                "/images/**",
-                                "/fonts/**"
+                                "/error"
                         ).permitAll()
+                        // Static assets with other methods (GET and HEAD take the fast path)
+                        .pathMatchers(STATIC_PATHS).permitAll()
+                        // Aggregated views: public GETs, the token (if any) is relayed to the services
+                        .pathMatchers(HttpMethod.GET, "/api/v1/views/**").permitAll()
+                        .pathMatchers("/actuator/health", "/actuator/health/**").permitAll()
+                        .pathMatchers("/actuator/**").hasAnyAuthority(actuatorAuthorities)
                         .anyExchange().authenticated()
                 )
 
-                // OAuth2 Login for browser (session-based)
-                .oauth2Login(oauth2 -> oauth2
-                        .authenticationSuccessHandler(
-                                new RedirectServerAuthenticationSuccessHandler(gatewayUrl + "/")
-                        )
-                )
+                // OAuth2 Login for browser (session or sealed cookie)
+                // Session mode: snapshot the user context into the session, then redirect
+                .oauth2Login(oauth2 -> {
+                    if (cookieRepository != null) {
+                        oauth2.securityContextRepository(cookieRepository)
+                                .authorizedClientRepository(cookieRepository)
+                                .authorizationRequestRepository(cookieAuthorizationRequestRepository.getObject())
+                                .authenticationSuccessHandler(redirectToHome);
+                    } else {
+                        oauth2.authenticationSuccessHandler(new DelegatingServerAuthenticationSuccessHandler(
+                                new UserContextSnapshotSuccessHandler(),
+                                redirectToHome
+                        ));
+                    }
+                })
                 .build();
     }
 
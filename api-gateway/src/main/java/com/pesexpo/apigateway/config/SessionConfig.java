@@ -0,0 +1,128 @@
+package com.pesexpo.apigateway.config;
+
+import com.pesexpo.apigateway.session.ChunkedCookie;
+import com.pesexpo.apigateway.session.CookieAuthorizationRequestRepository;
+import com.pesexpo.apigateway.session.CookieSealer;
+import com.pesexpo.apigateway.session.JdbcWebSessionStore;
+import com.pesexpo.apigateway.session.SessionAuthorizedClientRepository;
+import com.pesexpo.apigateway.session.SessionCookieRepository;
+import com.pesexpo.apigateway.session.SessionSerializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionIdResolver;
+import org.springframework.web.server.session.WebSessionManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Where the browser login lives (app.session.store)
+ *
+ * - memory (default): WebFlux's per-node in-memory WebSession store
+ * - jdbc: WebSessions (security context, saved requests, UserContext, authorized clients) in a
+ *   table every gateway instance reads, so a login and its tokens survive a restart or a request
+ *   landing on another node; without a configured datasource the embedded H2 database is used
+ *   (same code path, only shared by the instance itself); the DataSource, its pool and health
+ *   indicator exist only in this mode (excluded from auto-configuration otherwise)
+ * - cookie: no server-side session; the login and its tokens are sealed into a cookie
+ *   (SessionCookieRepository), the authorization request too during login; wired into the
+ *   security chain by SecurityConfig
+ */
+@Configuration
+public class SessionConfig {
+
+    // Browsers drop cookies over ~4 KB, name and attributes included
+    private static final int COOKIE_CHUNK_SIZE = 3800;
+
+    // Excluded on the application class; JdbcTemplate and the datasource health indicator follow it
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+    @ImportAutoConfiguration(DataSourceAutoConfiguration.class)
+    static class JdbcSessionDataSourceConfig {
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+    public JdbcWebSessionStore jdbcWebSessionStore(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.session.jdbc.table:gateway_web_session}") String table,
+            @Value("${app.session.jdbc.initialize-schema:true}") boolean initializeSchema,
+            @Value("${server.reactive.session.timeout:30m}") Duration maxIdleTime,
+            @Value("${app.session.jdbc.near-cache.revalidate-interval:2s}") Duration revalidateInterval,
+            @Value("${app.session.jdbc.near-cache.max-size:10000}") int nearCacheSize,
+            @Value("${app.session.jdbc.max-write-conflicts:3}") int maxWriteConflicts,
+            MeterRegistry meterRegistry) {
+        JdbcWebSessionStore store = new JdbcWebSessionStore(jdbcTemplate, table, maxIdleTime,
+                revalidateInterval, nearCacheSize, maxWriteConflicts, new SessionSerializer(), meterRegistry);
+        if (initializeSchema) {
+            store.initializeSchema();
+        }
+        return store;
+    }
+
+    // Replaces the WebFlux auto-configured manager (same bean name), keeping its id resolver
+    @Bean(name = "webSessionManager")
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+    public WebSessionManager webSessionManager(JdbcWebSessionStore jdbcWebSessionStore,
+                                               ObjectProvider<WebSessionIdResolver> webSessionIdResolver) {
+        DefaultWebSessionManager manager = new DefaultWebSessionManager();
+        manager.setSessionStore(jdbcWebSessionStore);
+        webSessionIdResolver.ifAvailable(manager::setSessionIdResolver);
+        return manager;
+    }
+
+    // Tokens in the shared session instead of the per-node authorized client service
+    // (replaces the auto-configured repository)
+    @Bean
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+    public SessionAuthorizedClientRepository sessionAuthorizedClientRepository() {
+        return new SessionAuthorizedClientRepository();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "cookie")
+    public CookieSealer sessionCookieSealer(
+            @Value("${app.session.cookie.keys:}") List<String> keys,
+            MeterRegistry meterRegistry) {
+        return new CookieSealer(keys, meterRegistry);
+    }
+
+    // Also the ServerOAuth2AuthorizedClientRepository (replaces the auto-configured one)
+    @Bean
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "cookie")
+    public SessionCookieRepository sessionCookieRepository(
+            CookieSealer sessionCookieSealer,
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            @Value("${app.session.cookie.name:GATEWAY_SESSION}") String name,
+            @Value("${app.session.cookie.max-age:7d}") Duration maxAge,
+            @Value("${app.session.cookie.max-size:7600B}") DataSize maxSize,
+            @Value("${app.session.cookie.secure:false}") boolean secure,
+            MeterRegistry meterRegistry) {
+        int maxChunks = (int) Math.max(1, maxSize.toBytes() / COOKIE_CHUNK_SIZE);
+        return new SessionCookieRepository(sessionCookieSealer,
+                new ChunkedCookie(name, COOKIE_CHUNK_SIZE, maxChunks, secure),
+                maxAge, clientRegistrationRepository, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.session.store", havingValue = "cookie")
+    public CookieAuthorizationRequestRepository cookieAuthorizationRequestRepository(
+            CookieSealer sessionCookieSealer,
+            @Value("${app.session.cookie.name:GATEWAY_SESSION}") String name,
+            @Value("${app.session.cookie.login-timeout:5m}") Duration loginTimeout,
+            @Value("${app.session.cookie.secure:false}") boolean secure) {
+        return new CookieAuthorizationRequestRepository(sessionCookieSealer,
+                new ChunkedCookie(name + "_LOGIN", COOKIE_CHUNK_SIZE, 1, secure),
+                loginTimeout, new SessionSerializer());
+    }
+}
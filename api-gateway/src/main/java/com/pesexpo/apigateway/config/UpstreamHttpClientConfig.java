@@ -0,0 +1,90 @@
+package com.pesexpo.apigateway.config;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Managed connection pools for the gateway's upstream HTTP clients
+ *
+ * - "gateway-upstream": the routing filter's pool, built by the gateway from
+ *   spring.cloud.gateway.server.webflux.httpclient.pool.* (FIXED, bounded pending acquires,
+ *   LIFO, idle/life eviction, metrics); Reactor Netty keeps one pool per remote address
+ *   (each microservice instance, Next.js), all with the same limits
+ * - Idle connections are closed before the upstream's keep-alive timeout and every connection
+ *   is recycled after maxLifeTime, so new instances pick up load after a scale-out
+ * - Optional h2c: HTTP/2 multiplexing over cleartext, upstreams must support it; applied to
+ *   the gateway-built client, which keeps its pool, timeouts, SSL and proxy settings
+ * - "gateway-webclient": pool behind the shared WebClient.Builder, same idle/life settings
+ *
+ * Metrics (Reactor Netty, tags name + remote.address):
+ * reactor.netty.connection.provider.{total,active,idle,pending}.connections,
+ * reactor.netty.connection.provider.pending.connections.time (acquire latency)
+ */
+@Slf4j
+@Configuration
+public class UpstreamHttpClientConfig {
+
+    private static final String POOL = "spring.cloud.gateway.server.webflux.httpclient.pool";
+
+    @Value("${app.upstream.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${app.upstream.h2c:false}")
+    private boolean h2c;
+
+    @Value("${" + POOL + ".acquire-timeout:2000}")
+    private long acquireTimeoutMillis;
+
+    @Value("${" + POOL + ".max-idle-time:15s}")
+    private Duration maxIdleTime;
+
+    @Value("${" + POOL + ".max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${" + POOL + ".eviction-interval:10s}")
+    private Duration evictionInterval;
+
+    @Value("${app.upstream.webclient.max-connections:50}")
+    private int webClientMaxConnections;
+
+    /**
+     * Adjusts the client the gateway built from its httpclient properties (never replaces it)
+     */
+    @Bean
+    public HttpClientCustomizer upstreamHttpClientCustomizer() {
+        log.info("Upstream HttpClient: h2c={}", h2c);
+        // HTTP11 alongside H2C: h2c is negotiated via Upgrade, plain HTTP/1.1 upstreams keep working
+        return httpClient -> h2c ? httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11) : httpClient;
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider webClientConnectionProvider() {
+        return ConnectionProvider.builder("gateway-webclient")
+                .maxConnections(webClientMaxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(acquireTimeoutMillis))
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictionInterval)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient.Builder webClientBuilder(ConnectionProvider webClientConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(webClientConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis());
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient));
+    }
+}
@@ -0,0 +1,92 @@
+package com.pesexpo.apigateway.controller;
+
+import com.pesexpo.apigateway.filter.RateLimiterGatewayFilterFactory;
+import com.pesexpo.apigateway.service.ProductViewService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.ClientAuthorizationRequiredException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Aggregated views served by the gateway itself (fan-out to several microservices)
+ */
+@RestController
+@RequestMapping("/api/v1/views")
+public class ProductViewController {
+
+    private static final String CLIENT_REGISTRATION_ID = "api-gateway-client";
+    private static final String RATE_LIMIT_ROUTE = "product-view";
+
+    private final ProductViewService productViewService;
+    private final ReactiveOAuth2AuthorizedClientManager authorizedClientManager;
+    private final RateLimiterGatewayFilterFactory rateLimiter;
+    private final RateLimiterGatewayFilterFactory.Config rateLimit = new RateLimiterGatewayFilterFactory.Config();
+
+    public ProductViewController(
+            ProductViewService productViewService,
+            ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
+            RateLimiterGatewayFilterFactory rateLimiter,
+            @Value("${app.rate-limit.views.replenish-rate:20}") double replenishRate,
+            @Value("${app.rate-limit.views.burst-capacity:40}") long burstCapacity) {
+        this.productViewService = productViewService;
+        this.authorizedClientManager = authorizedClientManager;
+        this.rateLimiter = rateLimiter;
+        this.rateLimit.setReplenishRate(replenishRate);
+        this.rateLimit.setBurstCapacity(burstCapacity);
+    }
+
+    /**
+     * Product detail page: product + orders, relaying the user's access token (if any) to both services
+     *
+     * - Public GET: anonymous callers are served without a token
+     * - Rate limited per caller like the routes (429 with Retry-After), before any upstream call
+     */
+    @GetMapping("/products/{uuid}")
+    public Mono<ResponseEntity<ProductViewService.ProductView>> productView(
+            @PathVariable String uuid,
+            Authentication authentication,
+            ServerWebExchange exchange) {
+        return rateLimiter.tryConsume(exchange, RATE_LIMIT_ROUTE, rateLimit)
+                .flatMap(waitNanos -> waitNanos > 0
+                        ? Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER,
+                                        Long.toString(RateLimiterGatewayFilterFactory.retryAfterSeconds(waitNanos)))
+                                .<ProductViewService.ProductView>build())
+                        : accessToken(authentication, exchange)
+                                .flatMap(accessToken -> productViewService.findProductView(uuid, accessToken))
+                                .map(ResponseEntity::ok));
+    }
+
+    // Bearer callers pass their own (verified) token on; browser logins use their authorized client;
+    // anonymous callers send none
+    private Mono<Optional<String>> accessToken(Authentication authentication, ServerWebExchange exchange) {
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken
+                || !authentication.isAuthenticated()) {
+            return Mono.just(Optional.empty());
+        }
+        if (authentication instanceof JwtAuthenticationToken bearer) {
+            return Mono.just(Optional.of(bearer.getToken().getTokenValue()));
+        }
+        OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest.withClientRegistrationId(CLIENT_REGISTRATION_ID)
+                .principal(authentication)
+                .attribute(ServerWebExchange.class.getName(), exchange)
+                .build();
+        return authorizedClientManager.authorize(request)
+                .map(authorizedClient -> Optional.of(authorizedClient.getAccessToken().getTokenValue()))
+                .switchIfEmpty(Mono.error(() -> new ClientAuthorizationRequiredException(CLIENT_REGISTRATION_ID)));
+    }
+}
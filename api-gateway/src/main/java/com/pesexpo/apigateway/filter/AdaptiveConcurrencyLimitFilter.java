@@ -0,0 +1,139 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.resilience.GradientConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive concurrency limit per upstream service id (lb://SERVICE routes)
+ *
+ * - One GradientConcurrencyLimit per service, driven by the measured RTT of its requests
+ * - Requests over the current limit get 503 before they reach the load balancer,
+ *   instead of queueing for a Reactor Netty connection
+ * - Runs after the route filters (cache hits never count) and just before load balancing
+ * - Errors and 5xx are not sampled: fast failures must not look like spare capacity
+ * - Shed requests are marked (SHED_ATTR, SHED_HOLDER_ATTR): retries skip them and the circuit
+ *   breaker does not count them as upstream failures
+ *
+ * Metrics: gateway.concurrency.limit{service}, gateway.concurrency.in-flight{service},
+ * gateway.concurrency.rejected{service}
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.concurrency-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class AdaptiveConcurrencyLimitFilter implements GlobalFilter, Ordered {
+
+    // Set on requests shed by the limiter (their 503 must not be retried)
+    public static final String SHED_ATTR = AdaptiveConcurrencyLimitFilter.class.getName() + ".shed";
+
+    // AtomicBoolean put by a filter around the attempts (circuit breaker); attempts copy the
+    // attributes map but share the holder, so the shed reaches the filter that created them
+    public static final String SHED_HOLDER_ATTR = AdaptiveConcurrencyLimitFilter.class.getName() + ".shed-holder";
+
+    private record ServiceLimit(GradientConcurrencyLimit limit, Counter rejected) { }
+
+    private final Map<String, ServiceLimit> limits = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final int longWindow;
+
+    public AdaptiveConcurrencyLimitFilter(
+            @Value("${app.concurrency-limit.initial-limit:20}") int initialLimit,
+            @Value("${app.concurrency-limit.min-limit:5}") int minLimit,
+            @Value("${app.concurrency-limit.max-limit:1000}") int maxLimit,
+            @Value("${app.concurrency-limit.smoothing:0.2}") double smoothing,
+            @Value("${app.concurrency-limit.rtt-tolerance:1.5}") double rttTolerance,
+            @Value("${app.concurrency-limit.long-window:600}") int longWindow,
+            MeterRegistry meterRegistry) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.longWindow = longWindow;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null || !"lb".equals(route.getUri().getScheme())) {
+            return chain.filter(exchange);
+        }
+
+        ServiceLimit serviceLimit = limits.computeIfAbsent(route.getUri().getHost(), this::createLimit);
+        GradientConcurrencyLimit limit = serviceLimit.limit();
+
+        int inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            serviceLimit.rejected().increment();
+            log.debug("Concurrency limit {} reached for {}", limit.getLimit(), route.getUri().getHost());
+            exchange.getAttributes().put(SHED_ATTR, Boolean.TRUE);
+            AtomicBoolean shedHolder = exchange.getAttribute(SHED_HOLDER_ATTR);
+            if (shedHolder != null) {
+                shedHolder.set(true);
+            }
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean failed = new AtomicBoolean();
+        return chain.filter(exchange)
+                .doOnError(e -> failed.set(true))
+                .doFinally(signal -> {
+                    limit.release();
+                    HttpStatusCode status = exchange.getResponse().getStatusCode();
+                    if (signal != SignalType.CANCEL && !failed.get()
+                            && (status == null || !status.is5xxServerError())) {
+                        limit.onSample(System.nanoTime() - start, inFlight);
+                    }
+                });
+    }
+
+    private ServiceLimit createLimit(String serviceId) {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(
+                initialLimit, minLimit, maxLimit, smoothing, rttTolerance, longWindow);
+
+        Gauge.builder("gateway.concurrency.limit", limit, GradientConcurrencyLimit::getLimit)
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.in-flight", limit, GradientConcurrencyLimit::getInFlight)
+                .tag("service", serviceId)
+                .register(meterRegistry);
+        Counter rejected = meterRegistry.counter("gateway.concurrency.rejected", "service", serviceId);
+
+        return new ServiceLimit(limit, rejected);
+    }
+
+    @Override
+    public int getOrder() {
+        // Just before the load balancer picks an instance
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+    }
+}
@@ -0,0 +1,217 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.AssetCache;
+import com.pesexpo.apigateway.cache.CachedResponse;
+import com.pesexpo.apigateway.cache.CapturingResponseDecorator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Route filter serving immutable static assets from an {@link AssetCache}
+ *
+ * - Paths matching immutablePaths (content-hashed bundles) are immutable by definition;
+ *   other assets only when the upstream marks them Cache-Control: immutable
+ * - Key: path + query + the negotiated encoding (br, gzip or identity); the upstream is asked
+ *   for exactly that encoding, so one entry serves every client accepting it
+ * - Hits are sent with a long-lived Cache-Control; disk entries go out zero-copy (sendfile),
+ *   or memory-mapped when the response is decorated
+ * - A disk entry whose file is gone or unreadable is dropped and the request goes upstream
+ * - Disk hits stay pinned in the cache until the response is written (see AssetCache)
+ * - Adds X-Cache: HIT | MISS to every cacheable response
+ */
+@Slf4j
+public class AssetCacheGatewayFilter implements GatewayFilter, Ordered {
+
+    private static final List<String> ENCODINGS = List.of("br", "gzip");
+
+    private final AssetCache cache;
+    private final List<PathPattern> immutablePaths;
+    private final String cacheControl;
+
+    public AssetCacheGatewayFilter(AssetCache cache, List<String> immutablePaths, String cacheControl) {
+        this.cache = cache;
+        this.immutablePaths = immutablePaths.stream()
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+        this.cacheControl = cacheControl;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!HttpMethod.GET.equals(request.getMethod()) && !HttpMethod.HEAD.equals(request.getMethod())) {
+            return chain.filter(exchange);
+        }
+
+        String encoding = negotiateEncoding(request.getHeaders());
+        String key = cacheKey(request, encoding);
+        AssetCache.Asset asset = cache.lookup(key);
+        if (asset == null) {
+            return fetch(exchange, chain, key, encoding);
+        }
+        log.debug("Asset cache HIT ({}): {}", asset.inMemory() ? "memory" : "disk", key);
+        if (asset.inMemory()) {
+            ServerHttpResponse response = exchange.getResponse();
+            writeHeaders(exchange, asset);
+            return isHead(exchange)
+                    ? response.setComplete()
+                    : response.writeWith(Mono.just(response.bufferFactory().wrap(asset.body())));
+        }
+
+        // The file can vanish or become unreadable underneath the index (tmp cleaners, manual cleanup):
+        // open it before anything is committed, otherwise drop the entry and go upstream
+        return Mono.fromCallable(() -> Optional.of(FileChannel.open(asset.file(), StandardOpenOption.READ)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(IOException.class, e -> {
+                    log.warn("Asset cache: {} unreadable, fetching from upstream: {}", key, e.toString());
+                    cache.evict(key, asset);
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(channel -> channel.isPresent()
+                        ? writeFromDisk(exchange, asset, channel.get())
+                        : fetch(exchange, chain, key, encoding))
+                // Pinned by lookup: the file is not deleted while it is being sent
+                .doFinally(signal -> cache.release(asset));
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, String key, String encoding) {
+        ServerHttpRequest request = exchange.getRequest();
+        boolean immutablePath = immutablePaths.stream()
+                .anyMatch(pattern -> pattern.matches(request.getPath().pathWithinApplication()));
+        ServerHttpRequest upstreamRequest = request.mutate()
+                .headers(headers -> headers.set(HttpHeaders.ACCEPT_ENCODING, encoding))
+                .build();
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().set(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "MISS");
+
+        ServerHttpResponse caching = new CapturingResponseDecorator(response, cache.getMaxEntryBytes()) {
+            @Override
+            protected boolean shouldCapture() {
+                return HttpMethod.GET.equals(request.getMethod())
+                        && HttpStatus.OK.equals(getStatusCode())
+                        && isCacheable(getHeaders(), immutablePath, encoding);
+            }
+
+            @Override
+            protected void onCaptured(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+                cache.put(key, CachedResponse.of(status, headers, body).headers(), body);
+            }
+        };
+
+        return chain.filter(exchange.mutate().request(upstreamRequest).response(caching).build());
+    }
+
+    private void writeHeaders(ServerWebExchange exchange, AssetCache.Asset asset) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().putAll(asset.headers());
+        response.getHeaders().setCacheControl(cacheControl);
+        response.getHeaders().setContentLength(asset.length());
+        response.getHeaders().set(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "HIT");
+    }
+
+    private Mono<Void> writeFromDisk(ServerWebExchange exchange, AssetCache.Asset asset, FileChannel channel) {
+        ServerHttpResponse response = exchange.getResponse();
+        writeHeaders(exchange, asset);
+        if (isHead(exchange)) {
+            closeQuietly(channel);
+            return response.setComplete();
+        }
+        if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+            // sendfile reopens it by path: the pin keeps this exact file until the write ends
+            closeQuietly(channel);
+            return zeroCopy.writeWith(asset.file(), 0, asset.length());
+        }
+
+        // Decorated response: map the file instead of copying it onto the heap
+        return Mono.fromCallable(() -> {
+                    try (channel) {
+                        // The mapping stays valid after the channel is closed
+                        return response.bufferFactory()
+                                .wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, asset.length()));
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(buffer -> response.writeWith(Mono.just(buffer)));
+    }
+
+    private static boolean isHead(ServerWebExchange exchange) {
+        return HttpMethod.HEAD.equals(exchange.getRequest().getMethod());
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Asset cache: could not close channel: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isCacheable(HttpHeaders headers, boolean immutablePath, String encoding) {
+        // The entry is shared by every client of that encoding, so it must be what was asked for
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (!encoding.equalsIgnoreCase(contentEncoding == null ? "identity" : contentEncoding)) {
+            return false;
+        }
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"))) {
+            return false;
+        }
+        // Set-Cookie would make the asset per client
+        if (headers.getFirst(HttpHeaders.SET_COOKIE) != null) {
+            return false;
+        }
+        return immutablePath || (cacheControl != null && cacheControl.contains("immutable"));
+    }
+
+    private static String cacheKey(ServerHttpRequest request, String encoding) {
+        StringBuilder key = new StringBuilder(request.getPath().value());
+        String query = request.getURI().getRawQuery();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        return key.append('|').append(encoding).toString();
+    }
+
+    private static String negotiateEncoding(HttpHeaders headers) {
+        String accepted = String.join(",", headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)).toLowerCase(Locale.ROOT);
+        for (String encoding : ENCODINGS) {
+            for (String coding : accepted.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if (parts[0].trim().equals(encoding) && !(parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?"))) {
+                    return encoding;
+                }
+            }
+        }
+        return "identity";
+    }
+
+    @Override
+    public int getOrder() {
+        // Must wrap the response before NettyWriteResponseFilter writes it
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+}
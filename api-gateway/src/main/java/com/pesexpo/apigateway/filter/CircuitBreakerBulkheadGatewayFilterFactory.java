@@ -0,0 +1,221 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.resilience.Bulkhead;
+import com.pesexpo.apigateway.resilience.RouteCircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-route circuit breaker + concurrency bulkhead
+ *
+ * - Circuit breaker: sliding window over the last calls, opens on failure rate (errors, 5xx)
+ *   or slow-call rate; see RouteCircuitBreaker
+ * - Bulkhead: caps in-flight upstream calls for the route, so a slow service cannot hold
+ *   every connection and event-loop slot the Next.js routes need
+ * - Fast fail: 503 with Retry-After, without touching the upstream
+ * - Runs after the response cache, so cached catalog responses are still served while open,
+ *   and around hedging and retries (same order, declared between them), so a request counts
+ *   once however many attempts it takes
+ * - Requests shed by the adaptive concurrency limiter end as ignored calls, not failures
+ * - One breaker + bulkhead per name, shared with aggregated views calling the same service (guard)
+ *
+ * Metrics: gateway.circuitbreaker.state{route} (0 closed, 1 open, 2 half-open),
+ * gateway.circuitbreaker.transitions{route,from,to}, gateway.circuitbreaker.rejected{route,reason},
+ * gateway.bulkhead.in-flight{route}
+ */
+@Slf4j
+@Component
+public class CircuitBreakerBulkheadGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<CircuitBreakerBulkheadGatewayFilterFactory.Config> {
+
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Protection> protections = new ConcurrentHashMap<>();
+
+    public CircuitBreakerBulkheadGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Protection protection = protection(config);
+
+        GatewayFilter filter = (exchange, chain) -> {
+            if (!protection.bulkhead().tryAcquire()) {
+                protection.bulkheadRejections().increment();
+                return fastFail(exchange, 1);
+            }
+            if (!protection.circuitBreaker().tryAcquirePermission()) {
+                protection.bulkhead().release();
+                protection.openRejections().increment();
+                return fastFail(exchange, protection.retryAfterSeconds());
+            }
+
+            long start = System.nanoTime();
+            AtomicBoolean failed = new AtomicBoolean();
+            // Before the attempts copy the attributes, so a shed in any of them is seen here
+            AtomicBoolean shed = new AtomicBoolean();
+            exchange.getAttributes().put(AdaptiveConcurrencyLimitFilter.SHED_HOLDER_ATTR, shed);
+            return chain.filter(exchange)
+                    .doOnError(e -> failed.set(true))
+                    .doFinally(signal -> {
+                        HttpStatusCode status = exchange.getResponse().getStatusCode();
+                        boolean serverError = status != null && status.is5xxServerError();
+                        if (shed.get() && serverError && !failed.get()) {
+                            // The gateway's own 503, not the upstream's: says nothing about its health
+                            protection.ignore();
+                            return;
+                        }
+                        protection.release(signal, start, failed.get() || serverError);
+                    });
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    /**
+     * Guard for upstream calls made outside the routes (e.g. WebClient fan-out of an aggregated view)
+     *
+     * - Same breaker and bulkhead as the route with the same name, so both trip together
+     * - Rejected calls fail with a 503 ResponseStatusException; errors other than 4xx responses
+     *   count as failures
+     */
+    public CallGuard guard(Config config) {
+        return new CallGuard(protection(config));
+    }
+
+    // One breaker + bulkhead per name; the first config registered for a name wins
+    private Protection protection(Config config) {
+        return protections.computeIfAbsent(config.getName(), name -> {
+            RouteCircuitBreaker circuitBreaker = new RouteCircuitBreaker(
+                    config.getSlidingWindowSize(),
+                    config.getMinimumCalls(),
+                    config.getFailureRateThreshold(),
+                    config.getSlowCallRateThreshold(),
+                    config.getSlowCallDuration(),
+                    config.getWaitInOpen(),
+                    config.getPermittedCallsInHalfOpen(),
+                    (from, to) -> {
+                        log.warn("Circuit breaker {}: {} -> {}", name, from, to);
+                        meterRegistry.counter("gateway.circuitbreaker.transitions",
+                                "route", name, "from", from.name(), "to", to.name()).increment();
+                    });
+            Bulkhead bulkhead = new Bulkhead(config.getMaxConcurrentCalls());
+
+            Gauge.builder("gateway.circuitbreaker.state", circuitBreaker, cb -> cb.getState().ordinal())
+                    .tag("route", name)
+                    .register(meterRegistry);
+            Gauge.builder("gateway.bulkhead.in-flight", bulkhead, Bulkhead::inFlight)
+                    .tag("route", name)
+                    .register(meterRegistry);
+            return new Protection(circuitBreaker, bulkhead,
+                    rejectedCounter(name, "open"), rejectedCounter(name, "bulkhead"));
+        });
+    }
+
+    private Counter rejectedCounter(String route, String reason) {
+        return meterRegistry.counter("gateway.circuitbreaker.rejected", "route", route, "reason", reason);
+    }
+
+    private Mono<Void> fastFail(ServerWebExchange exchange, long retryAfterSeconds) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return response.setComplete();
+    }
+
+    private record Protection(RouteCircuitBreaker circuitBreaker, Bulkhead bulkhead,
+                              Counter openRejections, Counter bulkheadRejections) {
+
+        long retryAfterSeconds() {
+            return Math.max(1, Duration.ofNanos(circuitBreaker.remainingOpenNanos()).toSeconds());
+        }
+
+        void ignore() {
+            bulkhead.release();
+            circuitBreaker.onIgnored();
+        }
+
+        void release(SignalType signal, long startNanos, boolean failed) {
+            bulkhead.release();
+            if (signal == SignalType.CANCEL) {
+                circuitBreaker.onIgnored();
+                return;
+            }
+            circuitBreaker.onResult(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    public static final class CallGuard {
+
+        private final Protection protection;
+
+        private CallGuard(Protection protection) {
+            this.protection = protection;
+        }
+
+        public <T> Mono<T> call(Mono<T> upstreamCall) {
+            return Mono.defer(() -> {
+                if (!protection.bulkhead().tryAcquire()) {
+                    protection.bulkheadRejections().increment();
+                    return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Bulkhead full"));
+                }
+                if (!protection.circuitBreaker().tryAcquirePermission()) {
+                    protection.bulkhead().release();
+                    protection.openRejections().increment();
+                    return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Circuit open"));
+                }
+
+                long start = System.nanoTime();
+                AtomicBoolean failed = new AtomicBoolean();
+                return upstreamCall
+                        .doOnError(e -> failed.set(!(e instanceof WebClientResponseException response
+                                && response.getStatusCode().is4xxClientError())))
+                        .doFinally(signal -> protection.release(signal, start, failed.get()));
+            });
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Metric tag / log name (the route id)
+        private String name = "default";
+
+        private int slidingWindowSize = 50;
+        private int minimumCalls = 20;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 80;
+        private Duration slowCallDuration = Duration.ofSeconds(2);
+        private Duration waitInOpen = Duration.ofSeconds(10);
+        private int permittedCallsInHalfOpen = 5;
+
+        private int maxConcurrentCalls = 200;
+    }
+}
@@ -0,0 +1,130 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.compression.CompressingResponseDecorator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming gzip for proxied JSON and SSR HTML (per-route opt-in)
+ *
+ * - Only when the client sends Accept-Encoding: gzip (or *) and the upstream did not encode
+ * - Compressible types only, above minSize; see CompressingResponseDecorator
+ * - Runs outermost (ahead of the response cache), so cached entries stay uncompressed
+ *   and are compressed per client like any other response
+ *
+ * Metrics: gateway.compression.responses{route}, gateway.compression.bytes{route, direction=in|out},
+ * gateway.compression.bytes.saved{route}
+ */
+@Component
+public class CompressionGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<CompressionGatewayFilterFactory.Config> {
+
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 3;
+
+    private static final List<MediaType> COMPRESSIBLE_TYPES = List.of(
+            MediaType.APPLICATION_JSON,
+            MediaType.valueOf("application/*+json"),
+            MediaType.APPLICATION_XML,
+            MediaType.TEXT_HTML,
+            MediaType.TEXT_PLAIN,
+            MediaType.valueOf("text/css"),
+            MediaType.valueOf("text/javascript"),
+            MediaType.valueOf("application/javascript"),
+            MediaType.valueOf("image/svg+xml")
+    );
+
+    private final MeterRegistry meterRegistry;
+
+    public CompressionGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String name = config.getName();
+        long minSize = config.getMinSize().toBytes();
+        int level = config.getLevel();
+
+        Counter responses = meterRegistry.counter("gateway.compression.responses", "route", name);
+        Counter bytesIn = meterRegistry.counter("gateway.compression.bytes", "route", name, "direction", "in");
+        Counter bytesOut = meterRegistry.counter("gateway.compression.bytes", "route", name, "direction", "out");
+        Counter bytesSaved = meterRegistry.counter("gateway.compression.bytes.saved", "route", name);
+
+        GatewayFilter filter = (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (HttpMethod.HEAD.equals(request.getMethod()) || !acceptsGzip(request.getHeaders())) {
+                return chain.filter(exchange);
+            }
+
+            CompressingResponseDecorator compressing = new CompressingResponseDecorator(
+                    exchange.getResponse(), COMPRESSIBLE_TYPES, minSize, level,
+                    (in, out) -> {
+                        responses.increment();
+                        bytesIn.increment(in);
+                        bytesOut.increment(out);
+                        bytesSaved.increment(Math.max(0, in - out));
+                    });
+            return chain.filter(exchange.mutate().response(compressing).build());
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.trim().split(";");
+                String token = parts[0].trim().toLowerCase(Locale.ROOT);
+                if ((token.equals("gzip") || token.equals("*")) && !isZeroQuality(parts)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Metric tag (the route id)
+        private String name = "default";
+
+        // Bodies with a known Content-Length below this are sent as is
+        private DataSize minSize = DataSize.ofKilobytes(1);
+
+        // Fast levels keep CPU per byte low on the event loop
+        private int level = Deflater.BEST_SPEED + 3;
+    }
+}
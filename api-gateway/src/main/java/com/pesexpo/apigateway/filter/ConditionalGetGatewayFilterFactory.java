@@ -0,0 +1,78 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.ETagResponseDecorator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+/**
+ * Conditional GETs for JSON API routes (per-route opt-in)
+ *
+ * - Adds a strong ETag (SHA-256 of the body) to 200 JSON responses
+ * - Requests with a matching If-None-Match get 304 and no body; the upstream still answers,
+ *   but the client transfer shrinks to a few header bytes
+ * - Runs inside compression and outside the response cache, so cache hits answer 304 from
+ *   the stored ETag without hashing again; compression turns the tag weak on the wire
+ *
+ * Metrics: gateway.conditional.responses{route, result=not-modified|full}
+ */
+@Component
+public class ConditionalGetGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ConditionalGetGatewayFilterFactory.Config> {
+
+    // Between compression (WRITE_RESPONSE_FILTER_ORDER - 3) and the response cache (- 1)
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2;
+
+    private final MeterRegistry meterRegistry;
+
+    public ConditionalGetGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long maxBytes = config.getMaxBodySize().toBytes();
+        Counter notModified = meterRegistry.counter("gateway.conditional.responses",
+                "route", config.getName(), "result", "not-modified");
+        Counter full = meterRegistry.counter("gateway.conditional.responses",
+                "route", config.getName(), "result", "full");
+
+        GatewayFilter filter = (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!HttpMethod.GET.equals(request.getMethod()) && !HttpMethod.HEAD.equals(request.getMethod())) {
+                return chain.filter(exchange);
+            }
+
+            List<String> ifNoneMatch = request.getHeaders().getOrEmpty(HttpHeaders.IF_NONE_MATCH);
+            ETagResponseDecorator etags = new ETagResponseDecorator(exchange.getResponse(), ifNoneMatch, maxBytes,
+                    wasNotModified -> (wasNotModified ? notModified : full).increment());
+            return chain.filter(exchange.mutate().response(etags).build());
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Metric tag (the route id)
+        private String name = "default";
+
+        // Larger bodies are passed through without an ETag rather than held in memory
+        private DataSize maxBodySize = DataSize.ofMegabytes(1);
+    }
+}
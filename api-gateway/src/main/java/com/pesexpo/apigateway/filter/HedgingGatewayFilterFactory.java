@@ -0,0 +1,196 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.hedging.BufferedServerHttpResponse;
+import com.pesexpo.apigateway.hedging.LatencyPercentileTracker;
+import com.pesexpo.apigateway.loadbalancer.LoadBalancerStats;
+import com.pesexpo.apigateway.loadbalancer.PowerOfTwoChoicesLoadBalancer;
+import com.pesexpo.apigateway.resilience.AttemptExchange;
+import com.pesexpo.apigateway.resilience.RequestBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Hedged GETs (per-route opt-in)
+ *
+ * - The first attempt goes upstream as usual, but into a detached in-memory response
+ * - If it has not completed after the route's pN latency (clamped to [minDelay, maxDelay]),
+ *   a second attempt is sent to a different instance; the first complete response wins
+ *   and the other attempt is cancelled
+ * - A hedge that fails or returns 5xx never wins over the first attempt
+ * - Global budget: hedges are limited to budgetPercent of hedge-eligible requests (RequestBudget)
+ * - Only for idempotent GETs with bounded responses (maxBodySize is buffered per attempt)
+ * - Runs before NettyWriteResponseFilter, so each attempt's write filter streams the upstream
+ *   body into that attempt's buffer (and releases the loser's connection when it is cancelled)
+ *
+ * Metrics: gateway.hedging.requests{route, result=hedged|won|budget-exhausted},
+ * gateway.hedging.delay{route} (ms)
+ */
+@Slf4j
+@Component
+public class HedgingGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgingGatewayFilterFactory.Config> {
+
+    // Same order as the response cache and coalescing, which are declared ahead of it on the route
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final RequestBudget budget;
+    private final LoadBalancerStats loadBalancerStats;
+    private final MeterRegistry meterRegistry;
+
+    public HedgingGatewayFilterFactory(
+            @Value("${app.hedging.budget-percent:5}") double budgetPercent,
+            @Value("${app.hedging.max-burst:20}") int maxBurst,
+            LoadBalancerStats loadBalancerStats,
+            MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.budget = new RequestBudget(budgetPercent, maxBurst);
+        this.loadBalancerStats = loadBalancerStats;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String name = config.getName();
+        long minDelayNanos = config.getMinDelay().toNanos();
+        long maxDelayNanos = config.getMaxDelay().toNanos();
+        long maxBodyBytes = config.getMaxBodySize().toBytes();
+
+        LatencyPercentileTracker latency = new LatencyPercentileTracker(
+                config.getPercentile(), config.getWindowSize(), maxDelayNanos);
+        Gauge.builder("gateway.hedging.delay", latency, l -> hedgeDelay(l, minDelayNanos, maxDelayNanos) / 1_000_000.0)
+                .tag("route", name)
+                .register(meterRegistry);
+        Counter hedged = counter(name, "hedged");
+        Counter won = counter(name, "won");
+        Counter exhausted = counter(name, "budget-exhausted");
+
+        GatewayFilter filter = (exchange, chain) -> {
+            if (!HttpMethod.GET.equals(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+            budget.deposit();
+
+            BufferedServerHttpResponse firstResponse =
+                    new BufferedServerHttpResponse(exchange.getResponse().bufferFactory(), maxBodyBytes);
+            ServerWebExchange first = AttemptExchange.of(exchange, firstResponse);
+            Mono<BufferedServerHttpResponse> primary = attempt(first, chain, firstResponse, latency);
+
+            Duration delay = Duration.ofNanos(hedgeDelay(latency, minDelayNanos, maxDelayNanos));
+            Mono<BufferedServerHttpResponse> hedge = Mono.delay(delay)
+                    .filter(tick -> {
+                        if (budget.tryWithdraw()) {
+                            return true;
+                        }
+                        exhausted.increment();
+                        return false;
+                    })
+                    .flatMap(tick -> {
+                        hedged.increment();
+                        log.debug("Hedging {} after {} ms", exchange.getRequest().getPath(), delay.toMillis());
+                        BufferedServerHttpResponse secondResponse =
+                                new BufferedServerHttpResponse(exchange.getResponse().bufferFactory(), maxBodyBytes);
+                        ServerWebExchange second = AttemptExchange.of(exchange, secondResponse);
+
+                        // Send the hedge to a different instance than the first attempt
+                        Response<ServiceInstance> firstInstance =
+                                first.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+                        if (firstInstance != null && firstInstance.hasServer()) {
+                            second.getAttributes().put(PowerOfTwoChoicesLoadBalancer.EXCLUDED_INSTANCE_ATTR,
+                                    firstInstance.getServer());
+                        }
+
+                        return attempt(second, chain, secondResponse, latency)
+                                .filter(response -> !isServerError(response))
+                                .doOnNext(response -> won.increment());
+                    });
+
+            return Mono.firstWithValue(primary, hedge)
+                    .onErrorMap(HedgingGatewayFilterFactory::firstCause)
+                    .flatMap(winner -> winner.writeTo(exchange.getResponse()));
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    private Mono<BufferedServerHttpResponse> attempt(ServerWebExchange attempt, GatewayFilterChain chain,
+                                                     BufferedServerHttpResponse response,
+                                                     LatencyPercentileTracker latency) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return chain.filter(attempt)
+                    .then(Mono.fromSupplier(() -> {
+                        latency.record(System.nanoTime() - start);
+                        return response;
+                    }))
+                    .doOnCancel(() -> {
+                        // The load balancer lifecycle is not told about cancelled exchanges
+                        Response<ServiceInstance> instance =
+                                attempt.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+                        if (instance != null && instance.hasServer()) {
+                            loadBalancerStats.onCancelled(instance.getServer());
+                        }
+                    });
+        });
+    }
+
+    private static long hedgeDelay(LatencyPercentileTracker latency, long minDelayNanos, long maxDelayNanos) {
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, latency.valueNanos()));
+    }
+
+    private static boolean isServerError(BufferedServerHttpResponse response) {
+        HttpStatusCode status = response.getStatusCode();
+        return status != null && status.is5xxServerError();
+    }
+
+    // Both attempts failed (or the hedge was skipped): surface the first attempt's error
+    private static Throwable firstCause(Throwable error) {
+        List<Throwable> causes = Exceptions.unwrapMultiple(error);
+        if (causes.size() == 1 && causes.get(0) == error && error.getSuppressed().length > 0) {
+            return error.getSuppressed()[0];
+        }
+        return causes.isEmpty() ? error : causes.get(0);
+    }
+
+    private Counter counter(String route, String result) {
+        return meterRegistry.counter("gateway.hedging.requests", "route", route, "result", result);
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Metric tag / log name (the route id)
+        private String name = "default";
+
+        // Hedge after this latency percentile of recent attempts
+        private double percentile = 95;
+        private int windowSize = 1024;
+
+        private Duration minDelay = Duration.ofMillis(20);
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        private DataSize maxBodySize = DataSize.ofMegabytes(1);
+    }
+}
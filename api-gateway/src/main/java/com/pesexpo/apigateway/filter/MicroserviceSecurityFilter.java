@@ -1,6 +1,11 @@
 package com.pesexpo.apigateway.filter;
 
+import com.pesexpo.apigateway.cache.ResponseCache;
+import com.pesexpo.apigateway.security.CompiledRoutePolicy;
+import com.pesexpo.apigateway.security.RoutePolicyEngine;
+import com.pesexpo.apigateway.security.UserContext;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
@@ -8,95 +13,122 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.util.Set;
+import java.util.Optional;
 
 /**
  * Security Filter for Microservices - Hybrid CSR/SSR Pattern
  *
+ * - Rules come from app.security.policies (path pattern × method × authorities)
  * - GET (CSR): Permitted without authentication - microservices have permitAll
- * - POST/PUT/DELETE (SSR): Require authentication via OAuth2
+ * - POST/PUT/DELETE (SSR): Require authentication via OAuth2 + one of the rule's authorities
  * - User context propagation to downstream services for authenticated requests
+ *   (per-session UserContext snapshot, built at login)
+ * - Writes invalidate the matching entries of the product response cache
  */
 @Component
 @Slf4j
 public class MicroserviceSecurityFilter implements GlobalFilter, Ordered {
 
-    private static final String USER_ID_HEADER = "X-User-ID";
-    private static final String USER_EMAIL_HEADER = "X-User-Email";
-    private static final String USER_ROLES_HEADER = "X-User-Roles";
+    private final RoutePolicyEngine routePolicyEngine;
+    private final ResponseCache productResponseCache;
 
-    // Protected service paths
-    private static final Set<String> PROTECTED_PATHS = Set.of(
-            "/api/v1/products",
-            "/api/v1/orders"
-    );
+    public MicroserviceSecurityFilter(
+            RoutePolicyEngine routePolicyEngine,
+            @Qualifier("productResponseCache") ResponseCache productResponseCache) {
+        this.routePolicyEngine = routePolicyEngine;
+        this.productResponseCache = productResponseCache;
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
         String path = request.getPath().value();
 
-        // Only apply to protected service routes
-        if (!isProtectedPath(path)) {
+        // Only apply to routes covered by the security policy (decoded segments, no matrix
+        // parameters: encodings of a protected path must not fall through as unprotected)
+        CompiledRoutePolicy.Rule rule = routePolicyEngine.match(
+                request.getPath().pathWithinApplication(), request.getMethod());
+        if (rule == null) {
             return chain.filter(exchange);
         }
 
-        // CSR: GET requests are permitted without authentication
-        if (HttpMethod.GET.equals(request.getMethod())) {
-            log.debug("CSR: Permitting GET request without auth: {}", path);
+        // CSR: reads (GET) are permitted without authentication by policy
+        if (rule.permitAll()) {
+            log.debug("CSR: Permitting {} request without auth: {}", request.getMethod(), path);
             return chain.filter(exchange);
         }
 
         // SSR: Write operations require authentication
-        log.debug("SSR: Checking auth for write operation: {} {}", request.getMethod(), path);
+        log.debug("SSR: Checking auth for write operation: {} {} ({})", request.getMethod(), path, rule.pattern());
 
-        return ReactiveSecurityContextHolder.getContext()
-                .map(SecurityContext::getAuthentication)
-                .flatMap(authentication -> {
+        return resolveUserContext(exchange)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(resolved -> {
                     // Check if authenticated
-                    if (authentication == null || !authentication.isAuthenticated()) {
+                    if (resolved.isEmpty()) {
                         log.warn("Unauthorized access attempt: {}", path);
                         return handleUnauthorized(exchange);
                     }
 
-                    // Check role-based access for write operations (POST, PUT, DELETE)
-                    boolean hasWriteAccess = authentication.getAuthorities().stream()
-                            .anyMatch(auth ->
-                                auth.getAuthority().contains("SCOPE_write") ||
-                                auth.getAuthority().contains("ROLE_USER") ||
-                                auth.getAuthority().contains("ROLE_ADMIN") ||
-                                auth.getAuthority().contains("ROLE_MANAGER")
-                            );
-
-                    if (!hasWriteAccess) {
+                    // Check the authorities required by the matching policy rule
+                    UserContext userContext = resolved.get();
+                    if (!rule.allows(userContext.authorities())) {
                         log.warn("Forbidden: User lacks write permission for {}", path);
                         return handleForbidden(exchange);
                     }
 
-                    // Propagate user context to downstream service
-                    ServerHttpRequest modifiedRequest = propagateUserContext(request, authentication);
-
+                    // Propagate user context to downstream service (pre-built header values)
                     ServerWebExchange modifiedExchange = exchange.mutate()
-                            .request(modifiedRequest)
+                            .request(request.mutate().headers(userContext::applyTo).build())
                             .build();
 
-                    return chain.filter(modifiedExchange);
-                })
-                .switchIfEmpty(Mono.defer(() -> {
-                    log.warn("No authentication context for: {}", path);
-                    return handleUnauthorized(exchange);
-                }));
+                    // Drop cached reads of this resource before and after the write; reads in
+                    // flight meanwhile are refused by the cache's generation check
+                    productResponseCache.invalidate(path);
+                    return chain.filter(modifiedExchange)
+                            .doFinally(signal -> productResponseCache.invalidate(path));
+                });
     }
 
-    private boolean isProtectedPath(String path) {
-        return PROTECTED_PATHS.stream().anyMatch(path::startsWith);
+    /**
+     * User context snapshot from the session (stored at login). Sessions created before the
+     * snapshot existed fall back to the security context once, then store the snapshot.
+     * In cookie mode the snapshot is an exchange attribute, set when the login cookie is opened;
+     * bearer-token requests are stateless and build it from the verified JWT.
+     */
+    private Mono<UserContext> resolveUserContext(ServerWebExchange exchange) {
+        UserContext fromCookie = exchange.getAttribute(UserContext.SESSION_ATTRIBUTE);
+        if (fromCookie != null) {
+            return Mono.just(fromCookie);
+        }
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(JwtAuthenticationToken.class::isInstance)
+                .map(UserContext::from)
+                .switchIfEmpty(Mono.defer(() -> fromSession(exchange)));
+    }
+
+    private Mono<UserContext> fromSession(ServerWebExchange exchange) {
+        return exchange.getSession().flatMap(session -> {
+            UserContext userContext = session.getAttribute(UserContext.SESSION_ATTRIBUTE);
+            if (userContext != null) {
+                return Mono.just(userContext);
+            }
+            return ReactiveSecurityContextHolder.getContext()
+                    .map(SecurityContext::getAuthentication)
+                    .filter(Authentication::isAuthenticated)
+                    .map(UserContext::from)
+                    .doOnNext(snapshot -> session.getAttributes().put(UserContext.SESSION_ATTRIBUTE, snapshot));
+        });
     }
 
     private boolean isWriteOperation(ServerHttpRequest request) {
@@ -106,33 +138,6 @@ public class MicroserviceSecurityFilter implements GlobalFilter, Ordered {
                HttpMethod.DELETE.equals(method);
     }
 
-    private ServerHttpRequest propagateUserContext(ServerHttpRequest request,
-                                                   org.springframework.security.core.Authentication authentication) {
-        ServerHttpRequest.Builder requestBuilder = request.mutate();
-
-        if (authentication.getPrincipal() instanceof OidcUser oidcUser) {
-            requestBuilder.header(USER_ID_HEADER, oidcUser.getSubject());
-
-            String email = oidcUser.getEmail();
-            if (email != null) {
-                requestBuilder.header(USER_EMAIL_HEADER, email);
-            }
-
-            String roles = authentication.getAuthorities().stream()
-                    .map(Object::toString)
-                    .reduce((a, b) -> a + "," + b)
-                    .orElse("");
-            if (!roles.isEmpty()) {
-                requestBuilder.header(USER_ROLES_HEADER, roles);
-            }
-
-            log.debug("User context propagated: userId={}, email={}",
-                    oidcUser.getSubject(), email);
-        }
-
-        return requestBuilder.build();
-    }
-
     private Mono<Void> handleUnauthorized(ServerWebExchange exchange) {
         ServerHttpResponse response = exchange.getResponse();
         response.setStatusCode(HttpStatus.UNAUTHORIZED);
@@ -0,0 +1,54 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.ResponseCache;
+import com.pesexpo.apigateway.security.CredentialedRequests;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.util.List;
+
+/**
+ * Short-lived cache for anonymous SSR page renders (nextjs-pages)
+ *
+ * - Bypassed when the request carries a login (any session or sealed login cookie, or an
+ *   Authorization header; see CredentialedRequests): logged-in renders are per user and are
+ *   never stored or served from here
+ * - Key: path + query + Accept-Encoding + Accept-Language + the locale cookie
+ * - Next.js marks dynamic renders private/no-store for browsers; that is ignored here because
+ *   an anonymous render is the same for every anonymous visitor. Replayed responses keep the
+ *   upstream Cache-Control, so browsers still do not cache them
+ * - Only HTML without Set-Cookie is stored
+ */
+public class PageMicroCacheGatewayFilter extends ResponseCacheGatewayFilter {
+
+    private final CredentialedRequests credentialedRequests;
+    private final String localeCookie;
+
+    public PageMicroCacheGatewayFilter(ResponseCache cache, CredentialedRequests credentialedRequests,
+                                       String localeCookie) {
+        super(cache, List.of(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.ACCEPT_LANGUAGE), credentialedRequests);
+        this.credentialedRequests = credentialedRequests;
+        this.localeCookie = localeCookie;
+    }
+
+    @Override
+    protected boolean bypass(ServerHttpRequest request) {
+        return credentialedRequests.test(request);
+    }
+
+    @Override
+    protected boolean isStorable(HttpHeaders responseHeaders) {
+        MediaType contentType = responseHeaders.getContentType();
+        return contentType != null
+                && MediaType.TEXT_HTML.includes(contentType)
+                && responseHeaders.getFirst(HttpHeaders.SET_COOKIE) == null;
+    }
+
+    @Override
+    protected String cacheKey(ServerHttpRequest request) {
+        HttpCookie locale = request.getCookies().getFirst(localeCookie);
+        return super.cacheKey(request) + '|' + (locale != null ? locale.getValue() : "");
+    }
+}
@@ -0,0 +1,181 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.ratelimit.TokenBucketTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-route token-bucket rate limiting
+ *
+ * - Keyed by subject for logged-in users (OIDC login) and bearer callers (JWT sub), client IP
+ *   otherwise
+ * - Client IP: the socket address, or with trustedProxies > 0 the X-Forwarded-For entry that
+ *   many hops from the right (entries added by the client itself are never used)
+ * - Limits (replenish rate + burst capacity) are set per route in RouteGatewayConfig
+ * - Buckets live in a striped in-memory table with idle-key eviction (see TokenBucketTable)
+ * - Rejected requests get 429 with Retry-After (seconds) and never reach the upstream
+ * - Runs ahead of the response cache and coalescing filters, so every request counts
+ * - Also used by the aggregated views (tryConsume), which are served outside the routes
+ *
+ * Metrics: gateway.ratelimit.rejected{route}, gateway.ratelimit.keys (gauge)
+ */
+@Slf4j
+@Component
+public class RateLimiterGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RateLimiterGatewayFilterFactory.Config> {
+
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2;
+
+    private final TokenBucketTable buckets;
+    private final RemoteAddressResolver remoteAddressResolver;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> rejectedByRoute = new ConcurrentHashMap<>();
+
+    public RateLimiterGatewayFilterFactory(
+            @Value("${app.rate-limit.stripes:64}") int stripes,
+            @Value("${app.rate-limit.max-keys:200000}") int maxKeys,
+            @Value("${app.rate-limit.idle-timeout:5m}") Duration idleTimeout,
+            @Value("${app.rate-limit.trusted-proxies:0}") int trustedProxies,
+            MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.buckets = new TokenBucketTable(stripes, maxKeys, idleTimeout);
+        this.remoteAddressResolver = trustedProxies > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(trustedProxies)
+                : new RemoteAddressResolver() { };
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("gateway.ratelimit.keys", buckets, TokenBucketTable::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        GatewayFilter filter = (exchange, chain) -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            String routeId = route != null ? route.getId() : "unknown";
+            return tryConsume(exchange, routeId, config)
+                    .flatMap(waitNanos -> waitNanos == 0 ? chain.filter(exchange) : reject(exchange, waitNanos));
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    /**
+     * Take tokens for the caller of {@code exchange}, also for requests served outside the routes
+     * (e.g. aggregated views); keyed and counted like the route filter.
+     *
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until enough tokens are available
+     */
+    public Mono<Long> tryConsume(ServerWebExchange exchange, String routeId, Config config) {
+        return resolveKey(exchange)
+                .map(key -> {
+                    long waitNanos = buckets.tryConsume(routeId + '|' + key,
+                            config.getReplenishRate(), config.getBurstCapacity(), config.getRequestedTokens());
+                    if (waitNanos > 0) {
+                        log.debug("Rate limit exceeded on {} for {}", routeId, key);
+                        rejectedByRoute.computeIfAbsent(routeId, id -> meterRegistry.counter(
+                                "gateway.ratelimit.rejected", "route", id)).increment();
+                    }
+                    return waitNanos;
+                });
+    }
+
+    // Security context first (covers the stateless bearer chain), then the exchange principal
+    private Mono<String> resolveKey(ServerWebExchange exchange) {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .cast(Principal.class)
+                .switchIfEmpty(exchange.getPrincipal())
+                .filter(principal -> !(principal instanceof AnonymousAuthenticationToken)
+                        && (!(principal instanceof Authentication authentication) || authentication.isAuthenticated()))
+                .map(RateLimiterGatewayFilterFactory::principalKey)
+                .switchIfEmpty(Mono.fromSupplier(() -> ipKey(exchange)));
+    }
+
+    private static String principalKey(Principal principal) {
+        if (principal instanceof OAuth2AuthenticationToken token
+                && token.getPrincipal() instanceof OidcUser oidcUser) {
+            return "sub:" + oidcUser.getSubject();
+        }
+        if (principal instanceof JwtAuthenticationToken token && token.getToken().getSubject() != null) {
+            return "sub:" + token.getToken().getSubject();
+        }
+        return "sub:" + principal.getName();
+    }
+
+    private String ipKey(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = remoteAddressResolver.resolve(exchange);
+        return remoteAddress != null && remoteAddress.getAddress() != null
+                ? "ip:" + remoteAddress.getAddress().getHostAddress()
+                : "ip:unknown";
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, long waitNanos) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds(waitNanos)));
+        return response.setComplete();
+    }
+
+    // Whole seconds, rounded up, at least 1
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+    }
+
+    /**
+     * Drop buckets of clients that went quiet.
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.sweep-interval:PT1M}")
+    public void evictIdle() {
+        int removed = buckets.evictIdle();
+        if (removed > 0) {
+            log.debug("Evicted {} idle rate-limit buckets", removed);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Tokens added per second (sustained request rate)
+        private double replenishRate = 50;
+
+        // Bucket size (largest burst allowed)
+        private long burstCapacity = 100;
+
+        // Tokens taken per request
+        private int requestedTokens = 1;
+    }
+}
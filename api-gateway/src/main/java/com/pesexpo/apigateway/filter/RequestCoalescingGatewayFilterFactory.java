@@ -0,0 +1,155 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.CachedResponse;
+import com.pesexpo.apigateway.cache.CapturingResponseDecorator;
+import com.pesexpo.apigateway.security.CredentialedRequests;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight request coalescing (per-route opt-in)
+ *
+ * - Concurrent identical GETs (route + path + query + Accept, Accept-Encoding and
+ *   Accept-Language) share one upstream exchange
+ * - Requests with an Authorization header or a session cookie are never coalesced: their
+ *   response may be per user
+ * - The first request (leader) goes upstream; followers wait and get a replay of its response
+ * - Responses larger than maxBodySize are not shared: followers fall back to their own upstream call
+ * - Only for routes whose GET responses are the same for every caller
+ *
+ * Metrics: gateway.coalescing.requests{route, result=leader|collapsed|fallback}
+ */
+@Slf4j
+@Component
+public class RequestCoalescingGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RequestCoalescingGatewayFilterFactory.Config> {
+
+    private final ConcurrentHashMap<String, Sinks.One<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final CredentialedRequests credentialedRequests;
+    private final MeterRegistry meterRegistry;
+
+    public RequestCoalescingGatewayFilterFactory(CredentialedRequests credentialedRequests,
+                                                 MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.credentialedRequests = credentialedRequests;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long maxBodyBytes = config.getMaxBodySize().toBytes();
+
+        GatewayFilter filter = (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!HttpMethod.GET.equals(request.getMethod()) || credentialedRequests.test(request)) {
+                return chain.filter(exchange);
+            }
+
+            String key = coalescingKey(exchange);
+            Sinks.One<CachedResponse> sink = Sinks.one();
+            Sinks.One<CachedResponse> leader = inFlight.putIfAbsent(key, sink);
+
+            // Follower: wait for the leader's response, or go upstream if it could not be shared
+            if (leader != null) {
+                return leader.asMono()
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(shared -> {
+                            if (shared.isPresent()) {
+                                count(exchange, "collapsed");
+                                return writeShared(exchange, shared.get());
+                            }
+                            count(exchange, "fallback");
+                            return chain.filter(exchange);
+                        });
+            }
+
+            // Leader: go upstream and publish the buffered response to all followers
+            count(exchange, "leader");
+            ServerHttpResponse sharing = new CapturingResponseDecorator(exchange.getResponse(), maxBodyBytes) {
+                @Override
+                protected boolean shouldCapture() {
+                    return true;
+                }
+
+                @Override
+                protected void onCaptured(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+                    if (inFlight.remove(key, sink)) {
+                        sink.tryEmitValue(CachedResponse.of(status, headers, body));
+                    }
+                }
+            };
+
+            return chain.filter(exchange.mutate().response(sharing).build())
+                    .doFinally(signal -> {
+                        if (inFlight.remove(key, sink)) {
+                            log.debug("Coalescing: response for {} not shared ({})", key, signal);
+                            sink.tryEmitEmpty();
+                        }
+                    });
+        };
+
+        return new OrderedGatewayFilter(filter, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private String coalescingKey(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        return routeId(exchange)
+                + '|' + request.getURI().getRawPath()
+                + '?' + Optional.ofNullable(request.getURI().getRawQuery()).orElse("")
+                + '|' + Optional.ofNullable(headers.getFirst(HttpHeaders.ACCEPT)).orElse("")
+                + '|' + Optional.ofNullable(headers.getFirst(HttpHeaders.ACCEPT_ENCODING)).orElse("")
+                + '|' + Optional.ofNullable(headers.getFirst(HttpHeaders.ACCEPT_LANGUAGE)).orElse("");
+    }
+
+    private Mono<Void> writeShared(ServerWebExchange exchange, CachedResponse shared) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(shared.status());
+        response.getHeaders().putAll(shared.headers());
+        response.getHeaders().setContentLength(shared.body().length);
+
+        DataBuffer buffer = response.bufferFactory().wrap(shared.body());
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    private void count(ServerWebExchange exchange, String result) {
+        meterRegistry.counter("gateway.coalescing.requests",
+                "route", routeId(exchange),
+                "result", result).increment();
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : "unknown";
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        private DataSize maxBodySize = DataSize.ofKilobytes(512);
+    }
+}
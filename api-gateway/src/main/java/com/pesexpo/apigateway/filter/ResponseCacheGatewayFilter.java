@@ -0,0 +1,162 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.CachedResponse;
+import com.pesexpo.apigateway.cache.CapturingResponseDecorator;
+import com.pesexpo.apigateway.cache.ETagResponseDecorator;
+import com.pesexpo.apigateway.cache.ResponseCache;
+import com.pesexpo.apigateway.security.CredentialedRequests;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Route filter serving idempotent GETs from a {@link ResponseCache}
+ *
+ * - Key: path + query + the configured request headers (Accept, Accept-Encoding, ...)
+ * - Only 200 responses without no-store/private Cache-Control are stored
+ * - Responses to credentialed requests (Authorization header or login cookie, which token relay
+ *   turns into one) are stored only if marked public or s-maxage, as for any shared cache
+ *   (RFC 9111 section 3.5); such requests are still answered from entries stored for others
+ * - JSON entries are stored with a strong ETag (same tag as ETagResponseDecorator computes),
+ *   so conditional GETs on hits are answered from it without hashing the body
+ * - Runs before token relay, so cache hits never touch the authorized client
+ * - Adds X-Cache: HIT | STALE | MISS to every cacheable response
+ */
+@Slf4j
+public class ResponseCacheGatewayFilter implements GatewayFilter, Ordered {
+
+    public static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private final ResponseCache cache;
+    private final List<String> keyHeaders;
+    private final CredentialedRequests credentialedRequests;
+
+    public ResponseCacheGatewayFilter(ResponseCache cache, List<String> keyHeaders,
+                                      CredentialedRequests credentialedRequests) {
+        this.cache = cache;
+        this.keyHeaders = List.copyOf(keyHeaders);
+        this.credentialedRequests = credentialedRequests;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+
+        if (!HttpMethod.GET.equals(request.getMethod()) || isNoStore(request.getHeaders()) || bypass(request)) {
+            return chain.filter(exchange);
+        }
+
+        String key = cacheKey(request);
+        long generation = cache.generation();
+        ResponseCache.Lookup lookup = cache.lookup(key);
+
+        if (lookup.response() != null) {
+            log.debug("Cache [{}] {}: {}", cache.getName(), lookup.state(), key);
+            return writeCached(exchange, lookup.response(), lookup.state() == ResponseCache.State.FRESH ? "HIT" : "STALE");
+        }
+
+        String path = request.getPath().value();
+        boolean credentialed = credentialedRequests.test(request);
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+
+        ServerHttpResponse caching = new CapturingResponseDecorator(response, cache.getMaxEntryBytes()) {
+            @Override
+            protected boolean shouldCapture() {
+                return HttpStatus.OK.equals(getStatusCode()) && isStorable(getHeaders())
+                        && (!credentialed || isShared(getHeaders()));
+            }
+
+            @Override
+            protected void onCaptured(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+                cache.put(key, path, CachedResponse.of(status, withETag(headers, body), body), generation);
+            }
+        };
+
+        return chain.filter(exchange.mutate().response(caching).build())
+                .doFinally(signal -> cache.endRevalidation(key));
+    }
+
+    /**
+     * Requests that must go upstream without touching the cache.
+     */
+    protected boolean bypass(ServerHttpRequest request) {
+        return false;
+    }
+
+    /**
+     * Whether a 200 response with these headers may be stored.
+     */
+    protected boolean isStorable(HttpHeaders responseHeaders) {
+        return !isNoStore(responseHeaders);
+    }
+
+    protected String cacheKey(ServerHttpRequest request) {
+        StringBuilder key = new StringBuilder(request.getPath().value());
+        String query = request.getURI().getRawQuery();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        HttpHeaders headers = request.getHeaders();
+        for (String header : keyHeaders) {
+            key.append('|');
+            String value = headers.getFirst(header);
+            if (value != null) {
+                key.append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    // Tagged once here, so hits are answered (200 or 304) from the stored ETag without hashing again
+    private static HttpHeaders withETag(HttpHeaders headers, byte[] body) {
+        if (headers.getETag() != null || !ETagResponseDecorator.isTaggable(headers)) {
+            return headers;
+        }
+        HttpHeaders tagged = new HttpHeaders();
+        tagged.putAll(headers);
+        tagged.setETag(ETagResponseDecorator.strongETag(body));
+        return tagged;
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(cached.status());
+        response.getHeaders().putAll(cached.headers());
+        response.getHeaders().setContentLength(cached.body().length);
+        response.getHeaders().set(CACHE_STATUS_HEADER, cacheStatus);
+
+        DataBuffer buffer = response.bufferFactory().wrap(cached.body());
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    // Explicitly shareable although the request was authorized
+    private static boolean isShared(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && (cacheControl.contains("public") || cacheControl.contains("s-maxage"));
+    }
+
+    protected static boolean isNoStore(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"));
+    }
+
+    @Override
+    public int getOrder() {
+        // Must wrap the response before NettyWriteResponseFilter writes it
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+}
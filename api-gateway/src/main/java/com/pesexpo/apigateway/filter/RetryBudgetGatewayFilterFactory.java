@@ -0,0 +1,199 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.loadbalancer.PowerOfTwoChoicesLoadBalancer;
+import com.pesexpo.apigateway.resilience.AttemptExchange;
+import com.pesexpo.apigateway.resilience.RequestBudget;
+import com.pesexpo.apigateway.resilience.RetryableAttemptResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ConnectTimeoutException;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.PrematureCloseException;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Budgeted retries for idempotent requests (per-route opt-in)
+ *
+ * - Retries GET/HEAD/OPTIONS/PUT/DELETE on connect failures, connections closed before a
+ *   response (rolling restarts) and 502/503 from the upstream
+ * - Retry budget per route: every request deposits budgetPercent/100 of a token, a retry
+ *   withdraws one (RequestBudget), so retries stay below ~budgetPercent of traffic
+ * - A retryable 502/503 is dropped at commit time and never reaches the client; all other
+ *   responses stream straight through
+ * - Each retry goes to a different instance than the failed attempt, after a short jittered backoff
+ * - 503s produced by the gateway's own concurrency limiter are not retried
+ * - A request body (PUT) is buffered once (cacheRequestBody) so every attempt can send it again
+ * - Runs before NettyWriteResponseFilter, so each attempt's write filter writes into that
+ *   attempt's response, where the retry decision is made
+ *
+ * Metrics: gateway.retry.requests{route, result=retried|budget-exhausted},
+ * gateway.retry.budget{route} (tokens available)
+ */
+@Slf4j
+@Component
+public class RetryBudgetGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RetryBudgetGatewayFilterFactory.Config> {
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+
+    private static final Set<HttpStatusCode> RETRYABLE_STATUSES = Set.of(
+            HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE);
+
+    // Inside hedging (same order, declared after it on the route), so each hedge attempt retries on its own
+    private static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final MeterRegistry meterRegistry;
+
+    public RetryBudgetGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String name = config.getName();
+        RequestBudget budget = new RequestBudget(config.getBudgetPercent(), config.getMaxBurst());
+
+        Gauge.builder("gateway.retry.budget", budget, RequestBudget::availableTokens)
+                .tag("route", name)
+                .register(meterRegistry);
+        Counter retried = meterRegistry.counter("gateway.retry.requests", "route", name, "result", "retried");
+        Counter exhausted = meterRegistry.counter("gateway.retry.requests", "route", name, "result", "budget-exhausted");
+
+        RetryPolicy policy = new RetryPolicy(config, budget, retried, exhausted);
+
+        GatewayFilter filter = (exchange, chain) -> {
+            if (!IDEMPOTENT_METHODS.contains(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+            budget.deposit();
+            if (!hasBody(exchange.getRequest().getHeaders())) {
+                return attempt(exchange, chain, policy, 1, null);
+            }
+            return ServerWebExchangeUtils.cacheRequestBody(exchange, request ->
+                    attempt(exchange.mutate().request(request).build(), chain, policy, 1, null));
+        };
+
+        return new OrderedGatewayFilter(filter, ORDER);
+    }
+
+    private static boolean hasBody(HttpHeaders headers) {
+        return headers.getContentLength() > 0 || headers.getFirst(HttpHeaders.TRANSFER_ENCODING) != null;
+    }
+
+    private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, RetryPolicy policy,
+                               int attempt, ServiceInstance failedInstance) {
+        ServerWebExchange[] current = new ServerWebExchange[1];
+        RetryableAttemptResponse response = new RetryableAttemptResponse(exchange.getResponse(),
+                status -> RETRYABLE_STATUSES.contains(status)
+                        && current[0].getAttribute(AdaptiveConcurrencyLimitFilter.SHED_ATTR) == null
+                        && policy.tryRetry(attempt));
+        current[0] = AttemptExchange.of(exchange, response);
+        if (failedInstance != null) {
+            current[0].getAttributes().put(PowerOfTwoChoicesLoadBalancer.EXCLUDED_INSTANCE_ATTR, failedInstance);
+        }
+
+        return chain.filter(current[0])
+                .then(Mono.defer(() -> response.isRetry()
+                        ? retry(exchange, chain, policy, attempt, current[0], response.getStatusCode())
+                        : Mono.<Void>empty()))
+                .onErrorResume(error -> isRetryable(error) && !response.isCommitted() && policy.tryRetry(attempt),
+                        error -> retry(exchange, chain, policy, attempt, current[0], error));
+    }
+
+    private Mono<Void> retry(ServerWebExchange exchange, GatewayFilterChain chain, RetryPolicy policy,
+                             int attempt, ServerWebExchange failed, Object cause) {
+        Response<ServiceInstance> instance = failed.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        ServiceInstance failedInstance = instance != null && instance.hasServer() ? instance.getServer() : null;
+
+        log.debug("Retrying {} {} (attempt {}) after {}", exchange.getRequest().getMethod(),
+                exchange.getRequest().getPath(), attempt + 1, cause);
+        return Mono.delay(policy.backoff())
+                .then(attempt(exchange, chain, policy, attempt + 1, failedInstance));
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException
+                    || t instanceof ConnectTimeoutException
+                    || t instanceof PrematureCloseException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class RetryPolicy {
+
+        private final int maxAttempts;
+        private final long backoffNanos;
+        private final RequestBudget budget;
+        private final Counter retried;
+        private final Counter exhausted;
+
+        private RetryPolicy(Config config, RequestBudget budget, Counter retried, Counter exhausted) {
+            this.maxAttempts = config.getMaxAttempts();
+            this.backoffNanos = config.getBackoff().toNanos();
+            this.budget = budget;
+            this.retried = retried;
+            this.exhausted = exhausted;
+        }
+
+        private boolean tryRetry(int attempt) {
+            if (attempt >= maxAttempts) {
+                return false;
+            }
+            if (!budget.tryWithdraw()) {
+                exhausted.increment();
+                return false;
+            }
+            retried.increment();
+            return true;
+        }
+
+        // Full jitter in [backoff/2, backoff]
+        private Duration backoff() {
+            long half = backoffNanos / 2;
+            return Duration.ofNanos(half + ThreadLocalRandom.current().nextLong(half + 1));
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Config {
+
+        // Metric tag / log name (the route id)
+        private String name = "default";
+
+        // Attempts including the first one
+        private int maxAttempts = 3;
+        private Duration backoff = Duration.ofMillis(50);
+
+        // Retries as a share of requests, and the largest retry burst after a quiet period
+        private double budgetPercent = 10;
+        private int maxBurst = 10;
+    }
+}
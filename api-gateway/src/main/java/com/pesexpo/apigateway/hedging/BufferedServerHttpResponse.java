@@ -0,0 +1,94 @@
+package com.pesexpo.apigateway.hedging;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Detached response for one upstream attempt: status, headers and body are kept in memory
+ * instead of being written to the client, so several attempts can run side by side and
+ * only the winner is copied to the real response.
+ */
+public class BufferedServerHttpResponse extends AbstractServerHttpResponse {
+
+    private final long maxBytes;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    public BufferedServerHttpResponse(DataBufferFactory bufferFactory, long maxBytes) {
+        super(bufferFactory);
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    @Override
+    protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> publisher) {
+        return Flux.from(publisher)
+                .doOnNext(buffer -> {
+                    try {
+                        int length = buffer.readableByteCount();
+                        if (body.size() + length > maxBytes) {
+                            throw new IllegalStateException(
+                                    "Response body exceeds " + DataSize.ofBytes(maxBytes) + " hedging buffer");
+                        }
+                        byte[] chunk = new byte[length];
+                        buffer.read(chunk);
+                        body.write(chunk, 0, length);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .then();
+    }
+
+    @Override
+    protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> publisher) {
+        return writeWithInternal(Flux.from(publisher).concatMap(p -> p));
+    }
+
+    @Override
+    protected void applyStatusCode() {
+    }
+
+    @Override
+    protected void applyHeaders() {
+    }
+
+    @Override
+    protected void applyCookies() {
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getNativeResponse() {
+        return (T) this;
+    }
+
+    /**
+     * Copy status, headers and body to the client response.
+     */
+    public Mono<Void> writeTo(ServerHttpResponse response) {
+        byte[] bytes = getBody();
+        response.setStatusCode(getStatusCode());
+        getHeaders().forEach((name, values) -> {
+            if (!HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(name)
+                    && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                response.getHeaders().addAll(name, values);
+            }
+        });
+        response.getCookies().putAll(getCookies());
+        response.getHeaders().setContentLength(bytes.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+    }
+}
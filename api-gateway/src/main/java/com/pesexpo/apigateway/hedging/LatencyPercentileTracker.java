@@ -0,0 +1,52 @@
+package com.pesexpo.apigateway.hedging;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rolling latency percentile over the last {@code windowSize} samples
+ *
+ * - Recording is a lock-free write into a ring buffer
+ * - The percentile is recomputed every {@code windowSize / 8} samples (copy + sort of the window),
+ *   readers only see a volatile value
+ * - Until the window has filled once, {@code initialNanos} is returned
+ */
+public class LatencyPercentileTracker {
+
+    private final double percentile;
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final int recomputeEvery;
+
+    private volatile long valueNanos;
+
+    public LatencyPercentileTracker(double percentile, int windowSize, long initialNanos) {
+        this.percentile = percentile;
+        this.samples = new AtomicLongArray(windowSize);
+        this.recomputeEvery = Math.max(1, windowSize / 8);
+        this.valueNanos = initialNanos;
+    }
+
+    public void record(long latencyNanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % samples.length()), latencyNanos);
+        if (n + 1 >= samples.length() && (n + 1) % recomputeEvery == 0) {
+            recompute();
+        }
+    }
+
+    private void recompute() {
+        long[] window = new long[samples.length()];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = samples.get(i);
+        }
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+        valueNanos = window[Math.max(0, Math.min(window.length - 1, index))];
+    }
+
+    public long valueNanos() {
+        return valueNanos;
+    }
+}
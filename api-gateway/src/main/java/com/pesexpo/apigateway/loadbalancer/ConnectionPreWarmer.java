@@ -0,0 +1,116 @@
+package com.pesexpo.apigateway.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opens upstream connections to new service instances before they take traffic
+ *
+ * - On every Eureka registry refresh (HeartbeatEvent), instances not seen before get
+ *   `connections` concurrent GETs on `path`; the connections then stay idle in the pool
+ * - Uses the gateway's routing HttpClient, so warmed connections are the ones requests reuse
+ * - On startup, HttpClient.warmup() loads the event loops, native transport and DNS resolver
+ * - Instances that left discovery are forgotten, so a re-registered instance is warmed again
+ *
+ * Metrics: gateway.upstream.prewarm{service, result=success|failure}
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.upstream.prewarm.enabled", havingValue = "true", matchIfMissing = true)
+public class ConnectionPreWarmer {
+
+    private final Map<String, Set<String>> warmedInstances = new ConcurrentHashMap<>();
+
+    private final HttpClient httpClient;
+    private final DiscoveryClient discoveryClient;
+    private final MeterRegistry meterRegistry;
+
+    private final List<String> services;
+    private final int connections;
+    private final String path;
+    private final Duration timeout;
+
+    public ConnectionPreWarmer(
+            HttpClient httpClient,
+            DiscoveryClient discoveryClient,
+            MeterRegistry meterRegistry,
+            @Value("${app.upstream.prewarm.services:PRODUCT-SERVICE,ORDER-SERVICE}") List<String> services,
+            @Value("${app.upstream.prewarm.connections:4}") int connections,
+            @Value("${app.upstream.prewarm.path:/actuator/health}") String path,
+            @Value("${app.upstream.prewarm.timeout:2s}") Duration timeout) {
+        this.httpClient = httpClient;
+        this.discoveryClient = discoveryClient;
+        this.meterRegistry = meterRegistry;
+        this.services = services;
+        this.connections = connections;
+        this.path = path;
+        this.timeout = timeout;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        httpClient.warmup()
+                .doOnError(e -> log.warn("HttpClient warmup failed: {}", e.getMessage()))
+                .onErrorComplete()
+                .subscribe();
+        warmNewInstances();
+    }
+
+    @EventListener(HeartbeatEvent.class)
+    public void onRegistryRefresh() {
+        warmNewInstances();
+    }
+
+    private void warmNewInstances() {
+        for (String serviceId : services) {
+            List<ServiceInstance> instances = discoveryClient.getInstances(serviceId);
+            Set<String> warmed = warmedInstances.computeIfAbsent(serviceId, id -> ConcurrentHashMap.newKeySet());
+
+            Set<String> current = new HashSet<>();
+            for (ServiceInstance instance : instances) {
+                String instanceId = LoadBalancerStats.instanceIdOf(instance);
+                current.add(instanceId);
+                if (warmed.add(instanceId)) {
+                    warm(serviceId, instance);
+                }
+            }
+            warmed.retainAll(current);
+        }
+    }
+
+    private void warm(String serviceId, ServiceInstance instance) {
+        String uri = instance.getUri() + path;
+        log.debug("Pre-warming {} connections to {} ({})", connections, uri, serviceId);
+
+        Flux.range(0, connections)
+                .flatMap(i -> httpClient.get()
+                        .uri(uri)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status())))
+                        .timeout(timeout)
+                        .map(status -> "success")
+                        .onErrorResume(e -> {
+                            log.debug("Pre-warm request to {} failed: {}", uri, e.getMessage());
+                            return Mono.just("failure");
+                        }), connections)
+                .subscribe(result -> meterRegistry.counter("gateway.upstream.prewarm",
+                        "service", serviceId, "result", result).increment());
+    }
+}
@@ -0,0 +1,29 @@
+package com.pesexpo.apigateway.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Per-client load balancer configuration (referenced from LoadBalancerConfig).
+ *
+ * Deliberately not a @Configuration: it is loaded into each load balancer child context,
+ * not into the application context.
+ */
+public class LatencyAwareLoadBalancerConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> latencyAwareLoadBalancer(
+            Environment environment,
+            LoadBalancerClientFactory loadBalancerClientFactory,
+            LoadBalancerStats loadBalancerStats) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new PowerOfTwoChoicesLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                serviceId,
+                loadBalancerStats);
+    }
+}
@@ -0,0 +1,241 @@
+package com.pesexpo.apigateway.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-instance latency and load statistics for the gateway load balancer
+ *
+ * - Fed by the load balancer lifecycle (start/complete of every lb:// exchange)
+ * - Peak-EWMA latency: slower samples are adopted immediately, recoveries decay over decayTime
+ * - Failures and 5xx responses count as a latency of at least failurePenalty
+ * - Warm-up: newly seen instances get a weight rising linearly from 0.1 to 1 over warmup
+ * - Stats of instances no longer returned by discovery are dropped after statsTtl
+ */
+@Component
+public class LoadBalancerStats implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+    private static final double MIN_WARMUP_WEIGHT = 0.1;
+
+    public record InstanceSnapshot(
+            String instanceId,
+            String uri,
+            int inFlight,
+            double latencyEwmaMillis,
+            double warmupWeight,
+            long requests,
+            long failures
+    ) { }
+
+    public static final class InstanceStats {
+
+        private final String serviceId;
+        private final String instanceId;
+        private final String uri;
+        private final long firstSeenNanos;
+        private volatile long lastSeenNanos;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        // Guarded by this
+        private double ewmaNanos;
+        private long lastSampleNanos;
+        private volatile double latencyNanos;
+
+        private InstanceStats(String serviceId, ServiceInstance instance, long now, long initialLatencyNanos) {
+            this.serviceId = serviceId;
+            this.instanceId = instanceIdOf(instance);
+            this.uri = instance.getUri().toString();
+            this.firstSeenNanos = now;
+            this.lastSeenNanos = now;
+            this.ewmaNanos = initialLatencyNanos;
+            this.lastSampleNanos = now;
+            this.latencyNanos = initialLatencyNanos;
+        }
+
+        private synchronized void record(long sampleNanos, long now, long decayNanos) {
+            if (sampleNanos > ewmaNanos) {
+                ewmaNanos = sampleNanos;
+            } else {
+                double w = Math.exp(-(double) (now - lastSampleNanos) / decayNanos);
+                ewmaNanos = ewmaNanos * w + sampleNanos * (1 - w);
+            }
+            lastSampleNanos = now;
+            latencyNanos = ewmaNanos;
+        }
+
+        private double warmupWeight(long now, long warmupNanos) {
+            if (warmupNanos <= 0) {
+                return 1;
+            }
+            double weight = (double) (now - firstSeenNanos) / warmupNanos;
+            return Math.max(MIN_WARMUP_WEIGHT, Math.min(1, weight));
+        }
+    }
+
+    // Keyed by instance id (unique across services in Eureka)
+    private final Map<String, InstanceStats> instances = new ConcurrentHashMap<>();
+
+    private final long decayNanos;
+    private final long warmupNanos;
+    private final long initialLatencyNanos;
+    private final long failurePenaltyNanos;
+    private final long statsTtlNanos;
+
+    public LoadBalancerStats(
+            @Value("${app.loadbalancer.decay-time:10s}") Duration decayTime,
+            @Value("${app.loadbalancer.warmup:30s}") Duration warmup,
+            @Value("${app.loadbalancer.initial-latency:50ms}") Duration initialLatency,
+            @Value("${app.loadbalancer.failure-penalty:1s}") Duration failurePenalty,
+            @Value("${app.loadbalancer.stats-ttl:10m}") Duration statsTtl) {
+        this.decayNanos = Math.max(1, decayTime.toNanos());
+        this.warmupNanos = warmup.toNanos();
+        this.initialLatencyNanos = initialLatency.toNanos();
+        this.failurePenaltyNanos = failurePenalty.toNanos();
+        this.statsTtlNanos = statsTtl.toNanos();
+    }
+
+    /**
+     * Stats for an instance returned by discovery (registers it on first sight).
+     */
+    public InstanceStats statsFor(String serviceId, ServiceInstance instance, long now) {
+        String instanceId = instanceIdOf(instance);
+        InstanceStats stats = instances.get(instanceId);
+        if (stats == null) {
+            stats = instances.computeIfAbsent(instanceId,
+                    id -> new InstanceStats(serviceId, instance, now, initialLatencyNanos));
+        }
+        stats.lastSeenNanos = now;
+        return stats;
+    }
+
+    /**
+     * Expected cost of sending one more request: latency × (in-flight + 1), inflated during warm-up.
+     */
+    public double cost(InstanceStats stats, long now) {
+        return stats.latencyNanos * (stats.inFlight.get() + 1) / stats.warmupWeight(now, warmupNanos);
+    }
+
+    @Override
+    public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+        return ServiceInstance.class.isAssignableFrom(serverTypeClass);
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (!lbResponse.hasServer()) {
+            return;
+        }
+        if (request.getContext() instanceof TimedRequestContext timed) {
+            timed.setRequestStartTime(System.nanoTime());
+        }
+        InstanceStats stats = instances.get(instanceIdOf(lbResponse.getServer()));
+        if (stats != null) {
+            stats.inFlight.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (completionContext.status() == CompletionContext.Status.DISCARD
+                || lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        InstanceStats stats = instances.get(instanceIdOf(lbResponse.getServer()));
+        if (stats == null) {
+            return;
+        }
+        stats.inFlight.decrementAndGet();
+        stats.requests.increment();
+
+        long now = System.nanoTime();
+        Object context = completionContext.getLoadBalancerRequest().getContext();
+        if (!(context instanceof TimedRequestContext timed) || timed.getRequestStartTime() == 0) {
+            return;
+        }
+        long latency = now - timed.getRequestStartTime();
+
+        if (isFailure(completionContext)) {
+            stats.failures.increment();
+            latency = Math.max(latency, failurePenaltyNanos);
+        }
+        stats.record(latency, now, decayNanos);
+    }
+
+    /**
+     * A request to this instance was cancelled before completing (e.g. the losing attempt of a
+     * hedged request); the load balancer lifecycle reports no completion for cancellations.
+     */
+    public void onCancelled(ServiceInstance instance) {
+        InstanceStats stats = instances.get(instanceIdOf(instance));
+        if (stats != null) {
+            stats.inFlight.decrementAndGet();
+        }
+    }
+
+    private static boolean isFailure(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        if (completionContext.status() == CompletionContext.Status.FAILED) {
+            return true;
+        }
+        return completionContext.getClientResponse() instanceof ResponseData response
+                && response.getHttpStatus() != null
+                && response.getHttpStatus().is5xxServerError();
+    }
+
+    /**
+     * Drop instances that discovery has not returned for statsTtl (deregistered or scaled in).
+     */
+    @Scheduled(fixedDelayString = "${app.loadbalancer.sweep-interval:PT1M}")
+    public void evictStale() {
+        long now = System.nanoTime();
+        instances.values().removeIf(stats -> now - stats.lastSeenNanos > statsTtlNanos && stats.inFlight.get() == 0);
+    }
+
+    public Map<String, List<InstanceSnapshot>> snapshot() {
+        long now = System.nanoTime();
+        Map<String, List<InstanceSnapshot>> snapshot = new TreeMap<>();
+        instances.values().forEach(stats -> snapshot
+                .computeIfAbsent(stats.serviceId, id -> new ArrayList<>())
+                .add(new InstanceSnapshot(
+                        stats.instanceId,
+                        stats.uri,
+                        stats.inFlight.get(),
+                        stats.latencyNanos / 1_000_000.0,
+                        stats.warmupWeight(now, warmupNanos),
+                        stats.requests.sum(),
+                        stats.failures.sum())));
+        snapshot.values().forEach(list -> list.sort(Comparator.comparing(InstanceSnapshot::instanceId)));
+        return snapshot;
+    }
+
+    static String instanceIdOf(ServiceInstance instance) {
+        return instance.getInstanceId() != null
+                ? instance.getInstanceId()
+                : instance.getHost() + ":" + instance.getPort();
+    }
+}
@@ -0,0 +1,25 @@
+package com.pesexpo.apigateway.loadbalancer;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GET /actuator/loadbalancer - per-instance latency, in-flight and warm-up stats by service
+ */
+@Component
+@Endpoint(id = "loadbalancer")
+@RequiredArgsConstructor
+public class LoadBalancerStatsEndpoint {
+
+    private final LoadBalancerStats loadBalancerStats;
+
+    @ReadOperation
+    public Map<String, List<LoadBalancerStats.InstanceSnapshot>> stats() {
+        return loadBalancerStats.snapshot();
+    }
+}
@@ -0,0 +1,111 @@
+package com.pesexpo.apigateway.loadbalancer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power-of-two-choices load balancer (replaces round robin for lb:// routes)
+ *
+ * - Picks two random instances and sends the request to the cheaper one
+ * - Cost = peak-EWMA latency × (in-flight + 1) / warm-up weight (see LoadBalancerStats)
+ * - A slow instance (GC pause, cold JIT) quickly loses traffic without being starved:
+ *   it still wins whenever it is paired with a slower or busier instance
+ * - An instance named in {@link #EXCLUDED_INSTANCE_ATTR} is skipped when others are available
+ *   (hedged attempts go to a different instance than the first attempt)
+ */
+@Slf4j
+public class PowerOfTwoChoicesLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    public static final String EXCLUDED_INSTANCE_ATTR = PowerOfTwoChoicesLoadBalancer.class.getName() + ".excludedInstance";
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    private final String serviceId;
+    private final LoadBalancerStats stats;
+
+    public PowerOfTwoChoicesLoadBalancer(
+            ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+            String serviceId,
+            LoadBalancerStats stats) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.serviceId = serviceId;
+        this.stats = stats;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+                .getIfAvailable(NoopServiceInstanceListSupplier::new);
+        ServiceInstance excluded = excludedInstance(request);
+        return supplier.get(request).next()
+                .map(instances -> {
+                    Response<ServiceInstance> response = select(without(instances, excluded));
+                    if (supplier instanceof SelectedInstanceCallback callback && response.hasServer()) {
+                        callback.selectedServiceInstance(response.getServer());
+                    }
+                    return response;
+                });
+    }
+
+    private static ServiceInstance excludedInstance(Request<?> request) {
+        if (request.getContext() instanceof RequestDataContext context
+                && context.getClientRequest() != null
+                && context.getClientRequest().getAttributes() != null
+                && context.getClientRequest().getAttributes().get(EXCLUDED_INSTANCE_ATTR) instanceof ServiceInstance instance) {
+            return instance;
+        }
+        return null;
+    }
+
+    private static List<ServiceInstance> without(List<ServiceInstance> instances, ServiceInstance excluded) {
+        if (excluded == null || instances.size() < 2) {
+            return instances;
+        }
+        String excludedId = LoadBalancerStats.instanceIdOf(excluded);
+        List<ServiceInstance> remaining = instances.stream()
+                .filter(instance -> !LoadBalancerStats.instanceIdOf(instance).equals(excludedId))
+                .toList();
+        return remaining.isEmpty() ? instances : remaining;
+    }
+
+    private Response<ServiceInstance> select(List<ServiceInstance> instances) {
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+
+        long now = System.nanoTime();
+        if (instances.size() == 1) {
+            stats.statsFor(serviceId, instances.get(0), now);
+            return new DefaultResponse(instances.get(0));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(instances.size());
+        int second = random.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        ServiceInstance a = instances.get(first);
+        ServiceInstance b = instances.get(second);
+        double costA = stats.cost(stats.statsFor(serviceId, a, now), now);
+        double costB = stats.cost(stats.statsFor(serviceId, b, now), now);
+
+        return new DefaultResponse(costA <= costB ? a : b);
+    }
+}
@@ -0,0 +1,145 @@
+package com.pesexpo.apigateway.ratelimit;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory token buckets keyed by client (subject or IP)
+ *
+ * - Striped: each stripe is an access-ordered map guarded by its own lock; the critical
+ *   section is a refill + take on two primitive fields, so contention stays low
+ * - Buckets are mutable and reused: steady-state traffic allocates nothing per request
+ * - Idle buckets (untouched for idleTimeout) are swept; a bucket that has been idle long
+ *   enough to refill is indistinguishable from a new one, so dropping it loses nothing
+ * - Hard cap on keys per stripe; least recently used buckets are evicted first
+ */
+public class TokenBucketTable {
+
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private static final class Bucket {
+
+        private double tokens;
+        private long lastRefillNanos;
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Bucket> buckets = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    private final Stripe[] stripes;
+    private final int maxKeysPerStripe;
+    private final long idleTimeoutNanos;
+
+    public TokenBucketTable(int stripeCount, int maxKeys, Duration idleTimeout) {
+        Assert.isTrue(stripeCount > 0 && Integer.bitCount(stripeCount) == 1, "stripes must be a power of two");
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxKeysPerStripe = Math.max(1, maxKeys / stripeCount);
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    /**
+     * Take {@code requested} tokens from the bucket for {@code key}.
+     *
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until enough tokens are available
+     */
+    public long tryConsume(String key, double replenishRatePerSecond, long burstCapacity, int requested) {
+        long now = System.nanoTime();
+        Stripe stripe = stripeFor(key);
+
+        stripe.lock.lock();
+        try {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                bucket = newBucket(stripe, key, burstCapacity, now);
+            } else {
+                double refill = (now - bucket.lastRefillNanos) * replenishRatePerSecond / NANOS_PER_SECOND;
+                bucket.tokens = Math.min(burstCapacity, bucket.tokens + refill);
+                bucket.lastRefillNanos = now;
+            }
+
+            if (bucket.tokens >= requested) {
+                bucket.tokens -= requested;
+                return 0;
+            }
+            double missing = requested - bucket.tokens;
+            return Math.max(1, (long) Math.ceil(missing * NANOS_PER_SECOND / replenishRatePerSecond));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Bucket newBucket(Stripe stripe, String key, long burstCapacity, long now) {
+        // Evict the least recently used bucket instead of growing past the cap
+        if (stripe.buckets.size() >= maxKeysPerStripe) {
+            Iterator<Bucket> eldest = stripe.buckets.values().iterator();
+            Bucket reused = eldest.next();
+            eldest.remove();
+            reused.tokens = burstCapacity;
+            reused.lastRefillNanos = now;
+            stripe.buckets.put(key, reused);
+            return reused;
+        }
+
+        Bucket bucket = new Bucket();
+        bucket.tokens = burstCapacity;
+        bucket.lastRefillNanos = now;
+        stripe.buckets.put(key, bucket);
+        return bucket;
+    }
+
+    /**
+     * Drop buckets untouched for longer than the idle timeout.
+     *
+     * @return the number of buckets removed
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int removed = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                // Access order: the eldest bucket is the least recently used, stop at the first active one
+                Iterator<Bucket> it = stripe.buckets.values().iterator();
+                while (it.hasNext()) {
+                    if (now - it.next().lastRefillNanos < idleTimeoutNanos) {
+                        break;
+                    }
+                    it.remove();
+                    removed++;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.buckets.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
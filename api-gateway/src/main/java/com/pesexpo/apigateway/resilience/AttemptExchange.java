@@ -0,0 +1,44 @@
+package com.pesexpo.apigateway.resilience;
+
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exchange for one upstream attempt (hedge, retry) of the same client request
+ *
+ * - Own response, so the attempt decides what (if anything) reaches the client
+ * - Own copy of the attributes, so gateway routing state (request URL, load balancer
+ *   response, already-routed flag, upstream connection) is per attempt and the rest of the
+ *   chain can run again
+ * - The filter creating attempts must be ordered before NettyWriteResponseFilter: that filter
+ *   reads the upstream connection from the attempt's attributes and writes the attempt's response
+ */
+public final class AttemptExchange extends ServerWebExchangeDecorator {
+
+    private final ServerHttpResponse response;
+    private final Map<String, Object> attributes;
+
+    private AttemptExchange(ServerWebExchange exchange, ServerHttpResponse response) {
+        super(exchange);
+        this.response = response;
+        this.attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+    }
+
+    public static ServerWebExchange of(ServerWebExchange exchange, ServerHttpResponse response) {
+        return new AttemptExchange(exchange, response);
+    }
+
+    @Override
+    public ServerHttpResponse getResponse() {
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+}
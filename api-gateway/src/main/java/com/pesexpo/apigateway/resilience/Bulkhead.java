@@ -0,0 +1,35 @@
+package com.pesexpo.apigateway.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency bulkhead: at most maxConcurrentCalls in flight, excess calls are rejected (no queueing)
+ */
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxConcurrentCalls) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,105 @@
+package com.pesexpo.apigateway.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive concurrency limit for one upstream (gradient algorithm, after Netflix Gradient2)
+ *
+ * - Tracks a long-term RTT baseline (EWMA over longWindow samples) and the latest RTT
+ * - gradient = clamp(rttTolerance × longRtt / shortRtt, 0.5, 1): 1 while latency is at the
+ *   baseline, lower as requests start queueing upstream
+ * - newLimit = limit × gradient + sqrt(limit) (headroom to probe for more throughput), smoothed
+ * - Samples taken while less than half the limit was in use are ignored (application-limited),
+ *   so the limit does not grow without evidence
+ * - When the baseline drifts far above current RTT (e.g. instances added), it decays toward it
+ */
+public class GradientConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final double longWindowFactor;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Guarded by this
+    private double limit;
+    private double longRttNanos;
+    private double lastRttNanos;
+    private int samples;
+
+    private volatile int currentLimit;
+
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    double smoothing, double rttTolerance, int longWindow) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.longWindowFactor = 2.0 / (longWindow + 1);
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+    }
+
+    /**
+     * Reserve a slot; returns the number of requests in flight when acquired, or -1 if over the limit.
+     */
+    public int tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= currentLimit) {
+                return -1;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return current + 1;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Feed one successful call's round-trip time.
+     */
+    public synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        lastRttNanos = rttNanos;
+        if (samples++ == 0) {
+            longRttNanos = rttNanos;
+            return;
+        }
+        longRttNanos = longRttNanos * (1 - longWindowFactor) + rttNanos * longWindowFactor;
+
+        // Baseline far above the current RTT: recover quickly instead of waiting for the EWMA
+        if (longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        currentLimit = (int) limit;
+    }
+
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized double getLongRttMillis() {
+        return longRttNanos / 1_000_000.0;
+    }
+
+    public synchronized double getLastRttMillis() {
+        return lastRttNanos / 1_000_000.0;
+    }
+}
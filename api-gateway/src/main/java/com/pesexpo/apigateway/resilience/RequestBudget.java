@@ -0,0 +1,45 @@
+package com.pesexpo.apigateway.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cap on extra upstream attempts (hedges, retries) as a share of eligible requests
+ *
+ * - Every eligible request deposits budgetPercent/100 of a token; an extra attempt withdraws one token
+ * - The balance is capped at maxTokens, so quiet periods cannot save up a large burst
+ * - With budgetPercent = 10, at most ~10% extra upstream load comes from these attempts
+ */
+public class RequestBudget {
+
+    // Fixed point: 1 token = 1000 units
+    private static final long UNIT = 1000;
+
+    private final long depositUnits;
+    private final long maxUnits;
+    private final AtomicLong balance;
+
+    public RequestBudget(double budgetPercent, int maxTokens) {
+        this.depositUnits = Math.round(budgetPercent / 100 * UNIT);
+        this.maxUnits = maxTokens * UNIT;
+        this.balance = new AtomicLong(maxUnits);
+    }
+
+    public void deposit() {
+        balance.getAndUpdate(units -> Math.min(maxUnits, units + depositUnits));
+    }
+
+    public boolean tryWithdraw() {
+        long units;
+        do {
+            units = balance.get();
+            if (units < UNIT) {
+                return false;
+            }
+        } while (!balance.compareAndSet(units, units - UNIT));
+        return true;
+    }
+
+    public double availableTokens() {
+        return (double) balance.get() / UNIT;
+    }
+}
@@ -0,0 +1,93 @@
+package com.pesexpo.apigateway.resilience;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Predicate;
+
+/**
+ * Response for one upstream attempt that decides at commit time whether it reaches the client
+ *
+ * - When the status is committed, {@code retryDecision} is asked once whether to retry
+ * - Retry: nothing is sent; the body is drained and released, and {@link #isRetry()} is true
+ * - Otherwise status, headers and cookies are applied to the client response and the body
+ *   is streamed straight through (no buffering)
+ */
+public class RetryableAttemptResponse extends AbstractServerHttpResponse {
+
+    private final ServerHttpResponse delegate;
+    private final Predicate<HttpStatusCode> retryDecision;
+
+    private Boolean retry;
+
+    public RetryableAttemptResponse(ServerHttpResponse delegate, Predicate<HttpStatusCode> retryDecision) {
+        super(delegate.bufferFactory());
+        this.delegate = delegate;
+        this.retryDecision = retryDecision;
+    }
+
+    public boolean isRetry() {
+        return retry != null && retry;
+    }
+
+    private boolean decide() {
+        if (retry == null) {
+            retry = getStatusCode() != null && retryDecision.test(getStatusCode());
+        }
+        return retry;
+    }
+
+    @Override
+    protected void applyStatusCode() {
+        if (!decide()) {
+            delegate.setStatusCode(getStatusCode());
+        }
+    }
+
+    @Override
+    protected void applyHeaders() {
+        if (!decide()) {
+            getHeaders().forEach((name, values) -> delegate.getHeaders().addAll(name, values));
+        }
+    }
+
+    @Override
+    protected void applyCookies() {
+        if (!decide()) {
+            getCookies().values().forEach(cookies -> cookies.forEach(delegate::addCookie));
+        }
+    }
+
+    @Override
+    protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+        if (decide()) {
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+        }
+        return delegate.writeWith(body);
+    }
+
+    @Override
+    protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        if (decide()) {
+            return Flux.from(body).concatMap(p -> p).doOnNext(DataBufferUtils::release).then();
+        }
+        return delegate.writeAndFlushWith(body);
+    }
+
+    @Override
+    public Mono<Void> setComplete() {
+        return super.setComplete().then(Mono.defer(() -> decide() ? Mono.empty() : delegate.setComplete()));
+    }
+
+    @Override
+    public <T> T getNativeResponse() {
+        return ServerHttpResponseDecorator.getNativeResponse(delegate);
+    }
+}
@@ -0,0 +1,152 @@
+package com.pesexpo.apigateway.resilience;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * Count-based sliding-window circuit breaker for one route
+ *
+ * - CLOSED: calls pass; the last windowSize outcomes are kept in a ring buffer
+ * - Opens when, over at least minimumCalls, the failure rate or the slow-call rate
+ *   reaches its threshold (percent)
+ * - OPEN: calls fail fast until waitInOpen has elapsed
+ * - HALF_OPEN: up to permittedCallsInHalfOpen trial calls; their outcome closes or re-opens it
+ */
+public class RouteCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @FunctionalInterface
+    public interface TransitionListener {
+
+        void onTransition(State from, State to);
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long waitInOpenNanos;
+    private final int permittedCallsInHalfOpen;
+    private final TransitionListener listener;
+
+    // Guarded by this
+    private final byte[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenPermits;
+
+    public RouteCircuitBreaker(int windowSize, int minimumCalls, float failureRateThreshold,
+                               float slowCallRateThreshold, Duration slowCallDuration, Duration waitInOpen,
+                               int permittedCallsInHalfOpen, TransitionListener listener) {
+        Assert.isTrue(windowSize > 0, "windowSize must be positive");
+        Assert.isTrue(permittedCallsInHalfOpen > 0, "permittedCallsInHalfOpen must be positive");
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.waitInOpenNanos = waitInOpen.toNanos();
+        this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+        this.listener = listener;
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * True if a call may go upstream now; every permitted call must be followed by
+     * {@link #onResult} or {@link #onIgnored}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < waitInOpenNanos) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onResult(long durationNanos, boolean failed) {
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        if (state == State.OPEN) {
+            // Late result of a call started before the breaker opened
+            return;
+        }
+
+        // Evict the oldest outcome once the window is full
+        if (recorded == windowSize) {
+            byte evicted = window[next];
+            failures -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % windowSize;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+
+        int required = state == State.HALF_OPEN ? permittedCallsInHalfOpen : minimumCalls;
+        if (recorded < required) {
+            return;
+        }
+        boolean tripped = failures * 100f / recorded >= failureRateThreshold
+                || slowCalls * 100f / recorded >= slowCallRateThreshold;
+
+        if (tripped) {
+            transition(State.OPEN);
+        } else if (state == State.HALF_OPEN) {
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * A permitted call that ended without an outcome (e.g. client cancelled).
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits = Math.min(permittedCallsInHalfOpen, halfOpenPermits + 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Nanoseconds until an open breaker lets trial calls through (0 unless OPEN).
+     */
+    public synchronized long remainingOpenNanos() {
+        return state == State.OPEN ? Math.max(0, waitInOpenNanos - (System.nanoTime() - openedAtNanos)) : 0;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+        if (to == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        } else if (to == State.HALF_OPEN) {
+            halfOpenPermits = permittedCallsInHalfOpen;
+        }
+        listener.onTransition(from, to);
+    }
+}
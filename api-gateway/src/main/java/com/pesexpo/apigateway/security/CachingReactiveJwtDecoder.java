@@ -0,0 +1,159 @@
+package com.pesexpo.apigateway.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bearer token decoder that verifies each distinct token once
+ *
+ * - Delegate: Nimbus decoder over the auth server's JWKS (key set cached, fetched again on
+ *   an unknown kid), RS256 signature plus issuer and timestamp validation
+ * - Verified tokens are kept by SHA-256 digest until their exp, capped at maxTtl so a key
+ *   removed from the JWKS stops being honoured within that time
+ * - Bounded: striped access-ordered maps, least recently used evicted first
+ * - Rejected tokens are not cached; the rate limiter bounds what they cost
+ *
+ * Metrics: gateway.jwt.decodes{result=cached|verified|rejected}, gateway.jwt.cache.size (gauge)
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private record Digest(byte[] value) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Digest digest && Arrays.equals(value, digest.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(value);
+        }
+    }
+
+    private record Verified(Jwt jwt, Instant expiresAt) { }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Digest, Verified> entries = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    private final ReactiveJwtDecoder delegate;
+    private final Duration maxTtl;
+    private final Stripe[] stripes;
+    private final int maxEntriesPerStripe;
+
+    private final Counter cached;
+    private final Counter verified;
+    private final Counter rejected;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, int maxEntries, Duration maxTtl,
+                                     int stripeCount, MeterRegistry meterRegistry) {
+        Assert.isTrue(stripeCount > 0 && Integer.bitCount(stripeCount) == 1, "stripes must be a power of two");
+        this.delegate = delegate;
+        this.maxTtl = maxTtl;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxEntriesPerStripe = Math.max(1, maxEntries / stripeCount);
+
+        this.cached = meterRegistry.counter("gateway.jwt.decodes", "result", "cached");
+        this.verified = meterRegistry.counter("gateway.jwt.decodes", "result", "verified");
+        this.rejected = meterRegistry.counter("gateway.jwt.decodes", "result", "rejected");
+        Gauge.builder("gateway.jwt.cache.size", this, CachingReactiveJwtDecoder::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) {
+        Digest digest = digest(token);
+        Jwt hit = get(digest);
+        if (hit != null) {
+            cached.increment();
+            return Mono.just(hit);
+        }
+
+        return delegate.decode(token)
+                .doOnNext(jwt -> {
+                    verified.increment();
+                    put(digest, jwt);
+                })
+                .doOnError(error -> rejected.increment());
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Jwt get(Digest digest) {
+        Stripe stripe = stripeFor(digest);
+        stripe.lock.lock();
+        try {
+            Verified entry = stripe.entries.get(digest);
+            if (entry == null) {
+                return null;
+            }
+            if (!Instant.now().isBefore(entry.expiresAt())) {
+                stripe.entries.remove(digest);
+                return null;
+            }
+            return entry.jwt();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void put(Digest digest, Jwt jwt) {
+        Instant expiresAt = Instant.now().plus(maxTtl);
+        if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isBefore(expiresAt)) {
+            expiresAt = jwt.getExpiresAt();
+        }
+
+        Stripe stripe = stripeFor(digest);
+        stripe.lock.lock();
+        try {
+            stripe.entries.put(digest, new Verified(jwt, expiresAt));
+            if (stripe.entries.size() > maxEntriesPerStripe) {
+                stripe.entries.pollFirstEntry();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripeFor(Digest digest) {
+        return stripes[digest.hashCode() & (stripes.length - 1)];
+    }
+
+    private static Digest digest(String token) {
+        try {
+            return new Digest(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.pesexpo.apigateway.security;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Route security policy compiled into a path-segment trie
+ *
+ * - Patterns: literal segments, {@code *} (one segment), trailing {@code **} (zero or more segments)
+ * - Requests are matched per decoded path segment without matrix parameters
+ *   ({@link PathContainer.PathSegment#valueToMatch()}), as Spring's PathPattern does, so
+ *   "/a;x=1/b" and "/%61/b" hit the same rule as "/a/b"
+ * - Most specific match wins: an exact/single-wildcard terminal node beats the deepest {@code **}
+ * - Within a node, the first rule whose methods match applies (definition order)
+ * - Required authorities are a BitSet over an index built from all rules; a user passes
+ *   if they hold at least one of them (or the rule only requires authentication)
+ */
+public final class CompiledRoutePolicy {
+
+    public record Definition(String path, List<String> methods, List<String> authorities, boolean permitAll) { }
+
+    public static final class Rule {
+
+        private final String pattern;
+        private final Set<String> methods;
+        private final boolean permitAll;
+        private final BitSet required;
+        private final Map<String, Integer> authorityIndex;
+
+        private Rule(String pattern, Set<String> methods, boolean permitAll, BitSet required,
+                     Map<String, Integer> authorityIndex) {
+            this.pattern = pattern;
+            this.methods = methods;
+            this.permitAll = permitAll;
+            this.required = required;
+            this.authorityIndex = authorityIndex;
+        }
+
+        public String pattern() {
+            return pattern;
+        }
+
+        public boolean permitAll() {
+            return permitAll;
+        }
+
+        private boolean matches(HttpMethod method) {
+            return methods.isEmpty() || methods.contains(method.name());
+        }
+
+        /**
+         * True if the authenticated user's authorities satisfy this rule.
+         */
+        public boolean allows(Collection<String> authorities) {
+            if (required.isEmpty()) {
+                return true;
+            }
+            for (String authority : authorities) {
+                Integer bit = authorityIndex.get(authority);
+                if (bit != null && required.get(bit)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private Node anySegment;
+        private final List<Rule> terminalRules = new ArrayList<>();
+        private final List<Rule> subtreeRules = new ArrayList<>();
+    }
+
+    private final Node root = new Node();
+    private final int ruleCount;
+
+    private CompiledRoutePolicy(int ruleCount) {
+        this.ruleCount = ruleCount;
+    }
+
+    public static CompiledRoutePolicy compile(List<Definition> definitions) {
+        Map<String, Integer> authorityIndex = new HashMap<>();
+        for (Definition definition : definitions) {
+            for (String authority : nullToEmpty(definition.authorities())) {
+                authorityIndex.putIfAbsent(authority, authorityIndex.size());
+            }
+        }
+        Map<String, Integer> index = Map.copyOf(authorityIndex);
+
+        CompiledRoutePolicy policy = new CompiledRoutePolicy(definitions.size());
+        for (Definition definition : definitions) {
+            BitSet required = new BitSet(index.size());
+            for (String authority : nullToEmpty(definition.authorities())) {
+                required.set(index.get(authority));
+            }
+            Set<String> methods = Set.copyOf(nullToEmpty(definition.methods()).stream()
+                    .map(m -> m.toUpperCase(Locale.ROOT))
+                    .toList());
+
+            policy.insert(definition.path(), new Rule(definition.path(), methods, definition.permitAll(), required, index));
+        }
+        return policy;
+    }
+
+    private void insert(String pattern, Rule rule) {
+        Node node = root;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals("**")) {
+                node.subtreeRules.add(rule);
+                return;
+            }
+            node = segment.equals("*")
+                    ? (node.anySegment != null ? node.anySegment : (node.anySegment = new Node()))
+                    : node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        node.terminalRules.add(rule);
+    }
+
+    /**
+     * The rule governing this request path, or null if no rule covers it (unprotected).
+     */
+    public Rule match(PathContainer path, HttpMethod method) {
+        return match(root, path.elements(), 0, method);
+    }
+
+    /**
+     * Same as {@link #match(PathContainer, HttpMethod)} for a raw (encoded) URL path.
+     */
+    public Rule match(String path, HttpMethod method) {
+        return match(PathContainer.parsePath(path), method);
+    }
+
+    private Rule match(Node node, List<PathContainer.Element> elements, int from, HttpMethod method) {
+        // Deepest ** seen so far is the fallback for everything below this node
+        Rule subtree = firstMatching(node.subtreeRules, method);
+
+        int index = from;
+        String segment = null;
+        while (index < elements.size() && segment == null) {
+            if (elements.get(index++) instanceof PathContainer.PathSegment pathSegment
+                    && !pathSegment.valueToMatch().isEmpty()) {
+                segment = pathSegment.valueToMatch();
+            }
+        }
+        if (segment == null) {
+            Rule terminal = firstMatching(node.terminalRules, method);
+            if (terminal != null) {
+                return terminal;
+            }
+            // "/a/**" also covers "/a" itself
+            return subtree;
+        }
+
+        Node literal = node.children.get(segment);
+        if (literal != null) {
+            Rule rule = match(literal, elements, index, method);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        if (node.anySegment != null) {
+            Rule rule = match(node.anySegment, elements, index, method);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return subtree;
+    }
+
+    private static Rule firstMatching(List<Rule> rules, HttpMethod method) {
+        for (Rule rule : rules) {
+            if (rule.matches(method)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public int ruleCount() {
+        return ruleCount;
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list != null ? list : List.of();
+    }
+}
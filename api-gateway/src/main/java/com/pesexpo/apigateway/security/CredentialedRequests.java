@@ -0,0 +1,55 @@
+package com.pesexpo.apigateway.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Whether a request carries a login: an Authorization header or a login cookie
+ *
+ * - Used by filters that share one response between callers (coalescing, page cache): the
+ *   response to a credentialed request may be per user and must not be handed to anyone else
+ * - Login cookies: the WebSession cookie (memory and jdbc stores) and the sealed login cookie
+ *   of the cookie store, including its chunks (NAME.0, NAME.1, ...) and the pending-login cookie
+ * - Checked on presence only; whether the login is still valid does not matter here
+ */
+@Component
+public class CredentialedRequests {
+
+    private final List<String> loginCookies;
+    private final List<String> chunkPrefixes;
+
+    public CredentialedRequests(
+            @Value("${server.reactive.session.cookie.name:SESSION}") String sessionCookie,
+            @Value("${app.session.cookie.name:GATEWAY_SESSION}") String sealedCookie) {
+        this.loginCookies = List.of(sessionCookie, sealedCookie, sealedCookie + "_LOGIN");
+        this.chunkPrefixes = loginCookies.stream().map(name -> name + ".").toList();
+    }
+
+    public boolean test(ServerHttpRequest request) {
+        if (request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION) != null) {
+            return true;
+        }
+        for (String cookie : request.getCookies().keySet()) {
+            if (isLoginCookie(cookie)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isLoginCookie(String cookie) {
+        if (loginCookies.contains(cookie)) {
+            return true;
+        }
+        for (String prefix : chunkPrefixes) {
+            if (cookie.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
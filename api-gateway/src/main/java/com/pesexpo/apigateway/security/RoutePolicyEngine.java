@@ -0,0 +1,60 @@
+package com.pesexpo.apigateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Declarative route security policy (app.security.policies)
+ *
+ * - Compiled once at startup into a {@link CompiledRoutePolicy} trie
+ * - Hot-reloaded when the environment changes (POST /actuator/refresh re-reads the config);
+ *   requests in flight keep the policy they started with
+ */
+@Slf4j
+@Component
+public class RoutePolicyEngine {
+
+    private static final String POLICIES_PROPERTY = "app.security.policies";
+
+    private final Environment environment;
+    private volatile CompiledRoutePolicy policy;
+
+    public RoutePolicyEngine(Environment environment) {
+        this.environment = environment;
+        this.policy = load();
+    }
+
+    public CompiledRoutePolicy.Rule match(PathContainer path, HttpMethod method) {
+        return policy.match(path, method);
+    }
+
+    @EventListener
+    public void onEnvironmentChange(EnvironmentChangeEvent event) {
+        if (event.getKeys().stream().anyMatch(key -> key.startsWith(POLICIES_PROPERTY))) {
+            try {
+                policy = load();
+            } catch (RuntimeException e) {
+                log.error("Invalid route security policy, keeping the previous one: {}", e.getMessage());
+            }
+        }
+    }
+
+    private CompiledRoutePolicy load() {
+        List<CompiledRoutePolicy.Definition> definitions = Binder.get(environment)
+                .bind(POLICIES_PROPERTY, Bindable.listOf(CompiledRoutePolicy.Definition.class))
+                .orElse(List.of());
+
+        CompiledRoutePolicy compiled = CompiledRoutePolicy.compile(definitions);
+        log.info("Route security policy compiled: {} rules", compiled.ruleCount());
+        return compiled;
+    }
+}
@@ -0,0 +1,80 @@
+package com.pesexpo.apigateway.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable per-session snapshot of the user context propagated to microservices
+ *
+ * - Computed once at login and stored as a WebSession attribute (bearer requests: per request)
+ * - Header values are pre-built (roles already joined), so applying them allocates nothing
+ * - authorities: checked against the route security policy (see RoutePolicyEngine)
+ */
+public record UserContext(
+        String userId,
+        String email,
+        String roles,
+        Set<String> authorities
+) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    public static final String SESSION_ATTRIBUTE = UserContext.class.getName();
+
+    public static final String USER_ID_HEADER = "X-User-ID";
+    public static final String USER_EMAIL_HEADER = "X-User-Email";
+    public static final String USER_ROLES_HEADER = "X-User-Roles";
+
+    public static UserContext from(Authentication authentication) {
+        Set<String> authorities = new HashSet<>();
+        StringBuilder roles = new StringBuilder();
+
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (authority.getAuthority() != null) {
+                authorities.add(authority.getAuthority());
+            }
+            if (!roles.isEmpty()) {
+                roles.append(',');
+            }
+            roles.append(authority);
+        }
+
+        // User headers are only propagated for OIDC logins and bearer JWTs
+        if (authentication.getPrincipal() instanceof OidcUser oidcUser) {
+            return new UserContext(
+                    oidcUser.getSubject(),
+                    oidcUser.getEmail(),
+                    roles.isEmpty() ? null : roles.toString(),
+                    Set.copyOf(authorities));
+        }
+        if (authentication.getPrincipal() instanceof Jwt jwt) {
+            return new UserContext(
+                    jwt.getSubject(),
+                    jwt.getClaimAsString("email"),
+                    roles.isEmpty() ? null : roles.toString(),
+                    Set.copyOf(authorities));
+        }
+        return new UserContext(null, null, null, Set.copyOf(authorities));
+    }
+
+    public void applyTo(HttpHeaders headers) {
+        if (userId != null) {
+            headers.set(USER_ID_HEADER, userId);
+        }
+        if (email != null) {
+            headers.set(USER_EMAIL_HEADER, email);
+        }
+        if (roles != null) {
+            headers.set(USER_ROLES_HEADER, roles);
+        }
+    }
+}
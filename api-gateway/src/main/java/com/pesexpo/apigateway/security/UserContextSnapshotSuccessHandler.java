@@ -0,0 +1,25 @@
+package com.pesexpo.apigateway.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.WebFilterExchange;
+import org.springframework.security.web.server.authentication.ServerAuthenticationSuccessHandler;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stores the {@link UserContext} snapshot in the session right after OAuth2 login.
+ */
+@Slf4j
+public class UserContextSnapshotSuccessHandler implements ServerAuthenticationSuccessHandler {
+
+    @Override
+    public Mono<Void> onAuthenticationSuccess(WebFilterExchange webFilterExchange, Authentication authentication) {
+        UserContext userContext = UserContext.from(authentication);
+        return webFilterExchange.getExchange().getSession()
+                .doOnNext(session -> {
+                    session.getAttributes().put(UserContext.SESSION_ATTRIBUTE, userContext);
+                    log.debug("User context snapshot stored for: {}", userContext.userId());
+                })
+                .then();
+    }
+}
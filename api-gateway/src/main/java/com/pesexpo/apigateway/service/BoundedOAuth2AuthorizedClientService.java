@@ -0,0 +1,387 @@
+package com.pesexpo.apigateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, expiring store for OAuth2 authorized clients (replaces the unbounded in-memory default)
+ *
+ * - Hard cap on entries; least recently used clients are evicted first
+ * - Entries expire with the refresh token (or the configured refresh-token TTL when the
+ *   token response carries no expiry), so abandoned browser sessions are reclaimed; a refresh
+ *   that keeps the same refresh token keeps its deadline
+ * - Last access is recorded per entry (second resolution) for loads and saves on the request
+ *   path; {@link #backgroundView()} reads and writes without counting as an access
+ * - Striped locks: each stripe is an access-ordered map guarded by its own lock
+ * - Compact entries: token values and epoch-second timestamps only; the shared
+ *   ClientRegistration is looked up again when a client is loaded
+ *
+ * Metrics: gateway.oauth2.authorized-clients (gauge), gateway.oauth2.authorized-clients.evictions{reason}
+ */
+@Slf4j
+@Component
+public class BoundedOAuth2AuthorizedClientService implements ReactiveOAuth2AuthorizedClientService {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    public record Key(String clientRegistrationId, String principalName) { }
+
+    private record StoredClient(
+            OAuth2AccessToken.TokenType tokenType,
+            String accessToken,
+            long accessIssuedAt,
+            long accessExpiresAt,
+            Set<String> scopes,
+            String refreshToken,
+            long refreshIssuedAt,
+            long refreshExpiresAt,
+            long expiresAt,
+            long lastAccessedAt
+    ) {
+
+        StoredClient withLastAccessedAt(long epochSecond) {
+            return new StoredClient(tokenType, accessToken, accessIssuedAt, accessExpiresAt, scopes,
+                    refreshToken, refreshIssuedAt, refreshExpiresAt, expiresAt, epochSecond);
+        }
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Key, StoredClient> entries = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    private final ReactiveClientRegistrationRepository clientRegistrationRepository;
+    private final Duration refreshTokenTtl;
+    private final Stripe[] stripes;
+    private final int maxEntriesPerStripe;
+
+    // Scope sets are shared between entries instead of copied per user
+    private final Map<Set<String>, Set<String>> scopeSets = new ConcurrentHashMap<>();
+
+    private final Counter expiredEvictions;
+    private final Counter capacityEvictions;
+
+    private final ReactiveOAuth2AuthorizedClientService backgroundView = new BackgroundView();
+
+    public BoundedOAuth2AuthorizedClientService(
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            @Value("${app.oauth2.authorized-clients.max-entries:100000}") int maxEntries,
+            @Value("${app.oauth2.authorized-clients.refresh-token-ttl:7d}") Duration refreshTokenTtl,
+            @Value("${app.oauth2.authorized-clients.stripes:16}") int stripeCount,
+            MeterRegistry meterRegistry) {
+        Assert.isTrue(stripeCount > 0 && Integer.bitCount(stripeCount) == 1, "stripes must be a power of two");
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.refreshTokenTtl = refreshTokenTtl;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxEntriesPerStripe = Math.max(1, maxEntries / stripeCount);
+
+        this.expiredEvictions = evictionCounter(meterRegistry, "expired");
+        this.capacityEvictions = evictionCounter(meterRegistry, "capacity");
+        Gauge.builder("gateway.oauth2.authorized-clients", this, BoundedOAuth2AuthorizedClientService::size)
+                .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("gateway.oauth2.authorized-clients.evictions")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId,
+                                                                          String principalName) {
+        return load(clientRegistrationId, principalName, true);
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        return save(authorizedClient, principal, true);
+    }
+
+    @Override
+    public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        Assert.hasText(principalName, "principalName cannot be empty");
+
+        return Mono.fromRunnable(() -> {
+            Key key = new Key(clientRegistrationId, principalName);
+            Stripe stripe = stripeFor(key);
+            stripe.lock.lock();
+            try {
+                stripe.entries.remove(key);
+            } finally {
+                stripe.lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * The same store for the background refresh: loads and saves there do not count as an
+     * access, so a login nobody uses any more is not kept alive by refreshing it.
+     */
+    public ReactiveOAuth2AuthorizedClientService backgroundView() {
+        return backgroundView;
+    }
+
+    /**
+     * Reclaim expired entries that are never looked up again (closed browsers).
+     */
+    @Scheduled(fixedDelayString = "${app.oauth2.authorized-clients.sweep-interval:PT1M}")
+    public void evictExpired() {
+        long now = Instant.now().getEpochSecond();
+        int removed = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Iterator<StoredClient> it = stripe.entries.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().expiresAt() <= now) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        if (removed > 0) {
+            expiredEvictions.increment(removed);
+            log.debug("Evicted {} expired authorized clients", removed);
+        }
+    }
+
+    /**
+     * Refreshable clients whose access token expires before {@code threshold} and that were
+     * accessed since {@code activeSince}, at most {@code limit}, scanning from {@code startStripe}
+     * so repeated calls do not always favour the same stripes.
+     */
+    public List<Key> findRefreshableExpiringBefore(Instant threshold, Instant activeSince, int limit,
+                                                   int startStripe) {
+        long before = threshold.getEpochSecond();
+        long since = activeSince.getEpochSecond();
+        List<Key> keys = new ArrayList<>(limit);
+
+        for (int i = 0; i < stripes.length && keys.size() < limit; i++) {
+            Stripe stripe = stripes[(startStripe + i) & (stripes.length - 1)];
+            stripe.lock.lock();
+            try {
+                for (Map.Entry<Key, StoredClient> entry : stripe.entries.entrySet()) {
+                    StoredClient stored = entry.getValue();
+                    if (stored.refreshToken() != null
+                            && stored.accessExpiresAt() != NONE
+                            && stored.accessExpiresAt() <= before
+                            && stored.lastAccessedAt() >= since) {
+                        keys.add(entry.getKey());
+                        if (keys.size() == limit) {
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return keys;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends OAuth2AuthorizedClient> Mono<T> load(String clientRegistrationId, String principalName,
+                                                            boolean access) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        Assert.hasText(principalName, "principalName cannot be empty");
+
+        Key key = new Key(clientRegistrationId, principalName);
+        StoredClient stored = get(key, access);
+        if (stored == null) {
+            return Mono.empty();
+        }
+
+        return clientRegistrationRepository.findByRegistrationId(clientRegistrationId)
+                .map(registration -> (T) toAuthorizedClient(registration, principalName, stored));
+    }
+
+    private Mono<Void> save(OAuth2AuthorizedClient authorizedClient, Authentication principal, boolean access) {
+        Assert.notNull(authorizedClient, "authorizedClient cannot be null");
+        Assert.notNull(principal, "principal cannot be null");
+
+        return Mono.fromRunnable(() -> put(
+                new Key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName()),
+                authorizedClient, access));
+    }
+
+    private StoredClient get(Key key, boolean access) {
+        long now = Instant.now().getEpochSecond();
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            StoredClient stored = stripe.entries.get(key);
+            if (stored == null) {
+                return null;
+            }
+            if (stored.expiresAt() <= now) {
+                stripe.entries.remove(key);
+                expiredEvictions.increment();
+                return null;
+            }
+            if (access && stored.lastAccessedAt() != now) {
+                stored = stored.withLastAccessedAt(now);
+                stripe.entries.put(key, stored);
+            }
+            return stored;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void put(Key key, OAuth2AuthorizedClient authorizedClient, boolean access) {
+        long now = Instant.now().getEpochSecond();
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            StoredClient previous = stripe.entries.get(key);
+            stripe.entries.put(key, toStoredClient(authorizedClient, previous, access ? now : NONE));
+
+            Iterator<StoredClient> eldest = stripe.entries.values().iterator();
+            while (stripe.entries.size() > maxEntriesPerStripe && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                capacityEvictions.increment();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripeFor(Key key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    // lastAccessedAt NONE: keep the previous entry's (background refresh)
+    private StoredClient toStoredClient(OAuth2AuthorizedClient authorizedClient, StoredClient previous,
+                                        long lastAccessedAt) {
+        OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+        OAuth2RefreshToken refreshToken = authorizedClient.getRefreshToken();
+        Set<String> scopes = scopeSets.computeIfAbsent(Set.copyOf(accessToken.getScopes()), s -> s);
+
+        long expiresAt;
+        long refreshExpiresAt = NONE;
+        if (refreshToken != null) {
+            if (refreshToken.getExpiresAt() != null) {
+                expiresAt = refreshToken.getExpiresAt().getEpochSecond();
+                refreshExpiresAt = expiresAt;
+            } else if (previous != null && refreshToken.getTokenValue().equals(previous.refreshToken())) {
+                // Refreshed without rotation: the refresh token's deadline has not moved
+                expiresAt = previous.expiresAt();
+                refreshExpiresAt = previous.refreshExpiresAt();
+            } else {
+                expiresAt = Instant.now().plus(refreshTokenTtl).getEpochSecond();
+            }
+        } else {
+            // Without a refresh token the entry is useless once the access token expires
+            expiresAt = accessToken.getExpiresAt() != null
+                    ? accessToken.getExpiresAt().getEpochSecond()
+                    : Instant.now().plus(refreshTokenTtl).getEpochSecond();
+        }
+
+        return new StoredClient(
+                accessToken.getTokenType(),
+                accessToken.getTokenValue(),
+                epochSecond(accessToken.getIssuedAt()),
+                epochSecond(accessToken.getExpiresAt()),
+                scopes,
+                refreshToken != null ? refreshToken.getTokenValue() : null,
+                refreshToken != null ? epochSecond(refreshToken.getIssuedAt()) : NONE,
+                refreshExpiresAt,
+                expiresAt,
+                lastAccessedAt != NONE ? lastAccessedAt : previous != null ? previous.lastAccessedAt() : NONE);
+    }
+
+    private static OAuth2AuthorizedClient toAuthorizedClient(ClientRegistration registration, String principalName,
+                                                             StoredClient stored) {
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                stored.tokenType(),
+                stored.accessToken(),
+                instant(stored.accessIssuedAt()),
+                instant(stored.accessExpiresAt()),
+                stored.scopes());
+
+        OAuth2RefreshToken refreshToken = stored.refreshToken() != null
+                ? new OAuth2RefreshToken(stored.refreshToken(), instant(stored.refreshIssuedAt()),
+                        instant(stored.refreshExpiresAt()))
+                : null;
+
+        return new OAuth2AuthorizedClient(registration, principalName, accessToken, refreshToken);
+    }
+
+    private final class BackgroundView implements ReactiveOAuth2AuthorizedClientService {
+
+        @Override
+        public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId,
+                                                                              String principalName) {
+            return load(clientRegistrationId, principalName, false);
+        }
+
+        @Override
+        public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+            return save(authorizedClient, principal, false);
+        }
+
+        @Override
+        public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+            return BoundedOAuth2AuthorizedClientService.this.removeAuthorizedClient(clientRegistrationId, principalName);
+        }
+    }
+
+    private static long epochSecond(Instant instant) {
+        return instant != null ? instant.getEpochSecond() : NONE;
+    }
+
+    private static Instant instant(long epochSecond) {
+        return epochSecond != NONE ? Instant.ofEpochSecond(epochSecond) : null;
+    }
+}
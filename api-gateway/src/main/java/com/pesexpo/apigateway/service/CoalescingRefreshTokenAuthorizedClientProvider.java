@@ -0,0 +1,45 @@
+package com.pesexpo.apigateway.service;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.RefreshTokenReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * refresh_token provider that routes actual refreshes through {@link TokenRefreshCoalescer}.
+ * Requests whose token is still valid go straight to the standard provider (a no-op).
+ */
+public class CoalescingRefreshTokenAuthorizedClientProvider implements ReactiveOAuth2AuthorizedClientProvider {
+
+    private final RefreshTokenReactiveOAuth2AuthorizedClientProvider delegate =
+            new RefreshTokenReactiveOAuth2AuthorizedClientProvider();
+    private final TokenRefreshCoalescer coalescer;
+    private final Duration clockSkew;
+
+    public CoalescingRefreshTokenAuthorizedClientProvider(TokenRefreshCoalescer coalescer, Duration clockSkew) {
+        this.coalescer = coalescer;
+        this.clockSkew = clockSkew;
+        this.delegate.setClockSkew(clockSkew);
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizationContext context) {
+        OAuth2AuthorizedClient authorizedClient = context.getAuthorizedClient();
+        if (authorizedClient == null
+                || authorizedClient.getRefreshToken() == null
+                || !isExpiring(authorizedClient.getAccessToken())) {
+            return delegate.authorize(context);
+        }
+        return coalescer.refresh(authorizedClient, () -> delegate.authorize(context));
+    }
+
+    private boolean isExpiring(OAuth2AccessToken accessToken) {
+        Instant expiresAt = accessToken.getExpiresAt();
+        return expiresAt != null && Instant.now().isAfter(expiresAt.minus(clockSkew));
+    }
+}
@@ -0,0 +1,165 @@
+package com.pesexpo.apigateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebSession;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single logout pipeline for POST /logout
+ *
+ * 1. Load the security context (once)
+ * 2. Queue token revocation and remove the authorized client (through the repository, so
+ *    this also covers the sealed login cookie of app.session.store=cookie)
+ * 3. Invalidate the session
+ * 4. Clear cookies and redirect to the OIDC end-session endpoint (or home without an OIDC user)
+ *
+ * The constant parts of the end-session URL are encoded once at startup.
+ *
+ * Metrics: gateway.logout.phase{phase=context|revocation|session|redirect}
+ */
+@Slf4j
+@Service
+public class LogoutService {
+
+    private static final List<String> SESSION_COOKIES = List.of("SESSION", "XSRF-TOKEN", "JSESSIONID");
+
+    private final ServerOAuth2AuthorizedClientRepository authorizedClientRepository;
+    private final TokenRevocationQueue tokenRevocationQueue;
+
+    // <auth-server>/connect/logout?id_token_hint=
+    private final String endSessionPrefix;
+    // &post_logout_redirect_uri=<encoded gateway>/logout-success&logout=true
+    private final String endSessionSuffix;
+
+    private final Timer contextTimer;
+    private final Timer revocationTimer;
+    private final Timer sessionTimer;
+    private final Timer redirectTimer;
+
+    public LogoutService(
+            @Value("${app.auth-server.url:http://localhost:9000}") String authServerUrl,
+            @Value("${app.gateway.url:http://localhost:8888}") String gatewayUrl,
+            ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+            TokenRevocationQueue tokenRevocationQueue,
+            MeterRegistry meterRegistry) {
+        this.authorizedClientRepository = authorizedClientRepository;
+        this.tokenRevocationQueue = tokenRevocationQueue;
+
+        this.endSessionPrefix = authServerUrl + "/connect/logout?id_token_hint=";
+        this.endSessionSuffix = "&post_logout_redirect_uri="
+                + URLEncoder.encode(gatewayUrl + "/logout-success", StandardCharsets.UTF_8)
+                + "&logout=true";
+
+        this.contextTimer = phaseTimer(meterRegistry, "context");
+        this.revocationTimer = phaseTimer(meterRegistry, "revocation");
+        this.sessionTimer = phaseTimer(meterRegistry, "session");
+        this.redirectTimer = phaseTimer(meterRegistry, "redirect");
+    }
+
+    private static Timer phaseTimer(MeterRegistry meterRegistry, String phase) {
+        return Timer.builder("gateway.logout.phase")
+                .tag("phase", phase)
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> logout(ServerWebExchange exchange) {
+        return timed(contextTimer, ReactiveSecurityContextHolder.getContext()
+                        .map(SecurityContext::getAuthentication))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(authentication -> {
+                    Mono<Void> revocation = Mono.empty();
+                    String redirectUrl = "/?logout=success";
+
+                    if (authentication.orElse(null) instanceof OAuth2AuthenticationToken oauthToken &&
+                            oauthToken.getPrincipal() instanceof OidcUser oidcUser) {
+                        log.info("Processing OIDC logout for user: {}", oauthToken.getName());
+                        revocation = revokeTokens(oauthToken, exchange);
+                        redirectUrl = buildEndSessionUrl(oidcUser.getIdToken());
+                    } else {
+                        log.info("No OIDC authentication, performing simple logout");
+                    }
+
+                    String location = redirectUrl;
+                    return timed(revocationTimer, revocation)
+                            .then(timed(sessionTimer, exchange.getSession().flatMap(WebSession::invalidate)))
+                            .then(timed(redirectTimer, Mono.defer(() -> redirect(exchange, location))));
+                })
+                .onErrorResume(error -> {
+                    log.error("Error during logout: {}", error.getMessage());
+                    return redirect(exchange, "/?logout=error");
+                });
+    }
+
+    /**
+     * Clear session cookies and send a 302 to the given location.
+     */
+    public Mono<Void> redirect(ServerWebExchange exchange, String location) {
+        ServerHttpResponse response = exchange.getResponse();
+        clearCookies(response);
+        response.setStatusCode(HttpStatus.FOUND);
+        response.getHeaders().setLocation(URI.create(location));
+        return response.setComplete();
+    }
+
+    private Mono<Void> revokeTokens(OAuth2AuthenticationToken principal, ServerWebExchange exchange) {
+        String clientRegistrationId = principal.getAuthorizedClientRegistrationId();
+        return authorizedClientRepository.loadAuthorizedClient(clientRegistrationId, principal, exchange)
+                .doOnNext(tokenRevocationQueue::enqueue)
+                .onErrorResume(e -> {
+                    log.warn("Could not load authorized client for token revocation: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then(authorizedClientRepository.removeAuthorizedClient(clientRegistrationId, principal, exchange));
+    }
+
+    private String buildEndSessionUrl(OidcIdToken idToken) {
+        StringBuilder url = new StringBuilder(endSessionPrefix)
+                .append(URLEncoder.encode(idToken.getTokenValue(), StandardCharsets.UTF_8));
+
+        String sid = idToken.getClaim("sid");
+        if (sid != null && !sid.isEmpty()) {
+            url.append("&sid=").append(URLEncoder.encode(sid, StandardCharsets.UTF_8));
+        }
+
+        return url.append(endSessionSuffix).toString();
+    }
+
+    private void clearCookies(ServerHttpResponse response) {
+        for (String name : SESSION_COOKIES) {
+            response.addCookie(ResponseCookie.from(name, "")
+                    .path("/")
+                    .maxAge(0)
+                    .build());
+        }
+    }
+
+    private static <T> Mono<T> timed(Timer timer, Mono<T> phase) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return phase.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.pesexpo.apigateway.service;
+
+import com.pesexpo.apigateway.filter.CircuitBreakerBulkheadGatewayFilterFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Product detail view: product + its orders, fetched from both services in parallel
+ *
+ * - One round trip for the product page instead of product-service calling order-service serially
+ * - Each branch has its own timeout; the product is required (404 / 504 / 502 otherwise),
+ *   orders are optional: on timeout or error the view is returned with orders = null,
+ *   partial = true and "orders" listed in missing
+ * - Calls go through the latency-aware load balancer and the gateway's upstream connection pool,
+ *   and through the circuit breaker + bulkhead of the product-service / order-service routes:
+ *   while one is open its branch fails fast (503 for the product, partial view for orders)
+ * - Anonymous callers: no Authorization header is sent, the services apply their public-GET rules
+ */
+@Slf4j
+@Service
+public class ProductViewService {
+
+    public record ProductView(Object product, Object orders, boolean partial, List<String> missing) { }
+
+    private final WebClient webClient;
+    private final Duration productTimeout;
+    private final Duration ordersTimeout;
+    private final CircuitBreakerBulkheadGatewayFilterFactory.CallGuard productGuard;
+    private final CircuitBreakerBulkheadGatewayFilterFactory.CallGuard ordersGuard;
+
+    public ProductViewService(
+            WebClient.Builder webClientBuilder,
+            HttpClient gatewayHttpClient,
+            LoadBalancedExchangeFilterFunction loadBalancerFunction,
+            CircuitBreakerBulkheadGatewayFilterFactory circuitBreakerFilterFactory,
+            @Value("${app.views.products.product-timeout:1s}") Duration productTimeout,
+            @Value("${app.views.products.orders-timeout:800ms}") Duration ordersTimeout,
+            // Same settings as the routes (RouteGatewayConfig), whichever registers the name first
+            @Value("${app.resilience.products.max-concurrent-calls:200}") int productsMaxConcurrentCalls,
+            @Value("${app.resilience.products.slow-call-duration:2s}") Duration productsSlowCallDuration,
+            @Value("${app.resilience.orders.max-concurrent-calls:100}") int ordersMaxConcurrentCalls,
+            @Value("${app.resilience.orders.slow-call-duration:3s}") Duration ordersSlowCallDuration) {
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(gatewayHttpClient))
+                .filter(loadBalancerFunction)
+                .build();
+        this.productTimeout = productTimeout;
+        this.ordersTimeout = ordersTimeout;
+        this.productGuard = circuitBreakerFilterFactory.guard(
+                circuitBreaker("product-service", productsMaxConcurrentCalls, productsSlowCallDuration));
+        this.ordersGuard = circuitBreakerFilterFactory.guard(
+                circuitBreaker("order-service", ordersMaxConcurrentCalls, ordersSlowCallDuration));
+    }
+
+    private static CircuitBreakerBulkheadGatewayFilterFactory.Config circuitBreaker(
+            String name, int maxConcurrentCalls, Duration slowCallDuration) {
+        CircuitBreakerBulkheadGatewayFilterFactory.Config config = new CircuitBreakerBulkheadGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMaxConcurrentCalls(maxConcurrentCalls);
+        config.setSlowCallDuration(slowCallDuration);
+        return config;
+    }
+
+    /**
+     * @param accessToken the caller's access token, empty for anonymous callers
+     */
+    public Mono<ProductView> findProductView(String uuid, Optional<String> accessToken) {
+        Mono<Object> product = productGuard
+                .call(get("http://PRODUCT-SERVICE/api/v1/products/{uuid}", uuid, accessToken)
+                        .timeout(productTimeout))
+                .onErrorMap(error -> toStatusException("product", uuid, error));
+
+        Mono<Optional<Object>> orders = ordersGuard
+                .call(get("http://ORDER-SERVICE/api/v1/orders/product/{uuid}", uuid, accessToken)
+                        .timeout(ordersTimeout))
+                .map(Optional::of)
+                .onErrorResume(error -> {
+                    log.warn("Orders for product {} unavailable, returning partial view: {}", uuid, error.toString());
+                    return Mono.just(Optional.empty());
+                });
+
+        // Both branches are subscribed at once; the slower one sets the latency
+        return Mono.zip(product, orders)
+                .map(tuple -> tuple.getT2()
+                        .map(o -> new ProductView(tuple.getT1(), o, false, List.of()))
+                        .orElseGet(() -> new ProductView(tuple.getT1(), null, true, List.of("orders"))));
+    }
+
+    private Mono<Object> get(String uri, String uuid, Optional<String> accessToken) {
+        return webClient.get()
+                .uri(uri, uuid)
+                .headers(headers -> accessToken.ifPresent(headers::setBearerAuth))
+                .retrieve()
+                .bodyToMono(Object.class);
+    }
+
+    private static Throwable toStatusException(String branch, String uuid, Throwable error) {
+        if (error instanceof ResponseStatusException rejected) {
+            // Circuit open or bulkhead full
+            log.warn("Fetching {} {} rejected: {}", branch, uuid, rejected.getReason());
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Product service unavailable");
+        }
+        if (error instanceof WebClientResponseException.NotFound) {
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
+        }
+        if (error instanceof WebClientResponseException.Unauthorized
+                || error instanceof WebClientResponseException.Forbidden) {
+            // Not public for this caller (e.g. anonymous): pass the service's decision on
+            return new ResponseStatusException(((WebClientResponseException) error).getStatusCode());
+        }
+        if (error instanceof TimeoutException) {
+            log.warn("Timed out fetching {} {}", branch, uuid);
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Product service timed out");
+        }
+        log.warn("Failed fetching {} {}: {}", branch, uuid, error.toString());
+        return new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Product service unavailable", error);
+    }
+}
@@ -0,0 +1,76 @@
+package com.pesexpo.apigateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Per-principal single-flight for refresh_token grants
+ *
+ * - Keyed by registration + principal + the refresh token being spent, so with refresh-token
+ *   rotation only one request ever presents a given refresh token to the auth server
+ * - Concurrent requests for the same session wait on the one refresh and share its result
+ * - The result is kept for a short grace period: requests that loaded the old token just
+ *   before the new one was saved reuse it instead of spending the rotated refresh token again
+ *
+ * Metrics: gateway.oauth2.token-refresh.calls, gateway.oauth2.token-refresh.coalesced
+ */
+@Slf4j
+@Component
+public class TokenRefreshCoalescer {
+
+    private final ConcurrentHashMap<String, Mono<OAuth2AuthorizedClient>> inFlight = new ConcurrentHashMap<>();
+    private final long graceMillis;
+
+    private final Counter refreshCalls;
+    private final Counter coalesced;
+
+    public TokenRefreshCoalescer(
+            @Value("${app.oauth2.token-refresh.coalescing-grace:5s}") Duration grace,
+            MeterRegistry meterRegistry) {
+        this.graceMillis = grace.toMillis();
+        this.refreshCalls = meterRegistry.counter("gateway.oauth2.token-refresh.calls");
+        this.coalesced = meterRegistry.counter("gateway.oauth2.token-refresh.coalesced");
+    }
+
+    public Mono<OAuth2AuthorizedClient> refresh(OAuth2AuthorizedClient current,
+                                                Supplier<Mono<OAuth2AuthorizedClient>> refresh) {
+        String key = current.getClientRegistration().getRegistrationId()
+                + ':' + current.getPrincipalName()
+                + ':' + current.getRefreshToken().getTokenValue();
+
+        Mono<OAuth2AuthorizedClient> existing = inFlight.get(key);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        AtomicReference<Mono<OAuth2AuthorizedClient>> self = new AtomicReference<>();
+        Mono<OAuth2AuthorizedClient> shared = Mono.defer(refresh)
+                .doFinally(signal -> Schedulers.parallel().schedule(
+                        () -> inFlight.remove(key, self.get()), graceMillis, TimeUnit.MILLISECONDS))
+                .cache();
+        self.set(shared);
+
+        Mono<OAuth2AuthorizedClient> raced = inFlight.putIfAbsent(key, shared);
+        if (raced != null) {
+            coalesced.increment();
+            return raced;
+        }
+
+        refreshCalls.increment();
+        log.debug("Refreshing access token for {}", current.getPrincipalName());
+        return shared;
+    }
+}
@@ -0,0 +1,125 @@
+package com.pesexpo.apigateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Proactive background refresh of relayed access tokens
+ *
+ * - Every tick, picks up to batchSize authorized clients whose access token expires within skew
+ *   and that a request used within idleTimeout; idle logins are left to expire with their
+ *   refresh token (a request after that refreshes on the request path)
+ * - Refreshes them with at most maxConcurrency calls to /oauth2/token in flight
+ * - tokenRelay() then finds a fresh token, so user requests never wait on a refresh
+ * - A rejected refresh token (invalid_grant) removes the authorized client, like on the request path
+ * - Covers the in-memory authorized client service (app.session.store=memory); with the jdbc and
+ *   cookie stores the tokens live in the session and are refreshed on the request path
+ *
+ * Metrics: gateway.oauth2.token-refresh{mode=background, result=success|failure}
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.oauth2.token-refresh.enabled", havingValue = "true", matchIfMissing = true)
+public class TokenRefreshScheduler {
+
+    private final BoundedOAuth2AuthorizedClientService authorizedClientService;
+    private final AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager backgroundManager;
+    private final Duration skew;
+    private final Duration idleTimeout;
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final Duration batchTimeout;
+
+    private final Counter refreshed;
+    private final Counter failed;
+
+    private int nextStripe;
+
+    public TokenRefreshScheduler(
+            BoundedOAuth2AuthorizedClientService authorizedClientService,
+            ReactiveClientRegistrationRepository clientRegistrationRepository,
+            TokenRefreshCoalescer tokenRefreshCoalescer,
+            @Value("${app.oauth2.token-refresh.skew:5m}") Duration skew,
+            @Value("${app.oauth2.token-refresh.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${app.oauth2.token-refresh.batch-size:20}") int batchSize,
+            @Value("${app.oauth2.token-refresh.max-concurrency:2}") int maxConcurrency,
+            @Value("${app.oauth2.token-refresh.batch-timeout:30s}") Duration batchTimeout,
+            MeterRegistry meterRegistry) {
+        this.authorizedClientService = authorizedClientService;
+        this.skew = skew;
+        this.idleTimeout = idleTimeout;
+        this.batchSize = batchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.batchTimeout = batchTimeout;
+
+        // Private manager: refreshes anything expiring within the skew, not just expired tokens.
+        // Shares the coalescer with the request path so both never spend the same refresh token.
+        // Goes through the background view, so its loads and saves do not count as use.
+        this.backgroundManager = new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(
+                clientRegistrationRepository, authorizedClientService.backgroundView());
+        this.backgroundManager.setAuthorizedClientProvider(
+                new CoalescingRefreshTokenAuthorizedClientProvider(tokenRefreshCoalescer, skew));
+
+        this.refreshed = refreshCounter(meterRegistry, "success");
+        this.failed = refreshCounter(meterRegistry, "failure");
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.oauth2.token-refresh")
+                .tag("mode", "background")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.oauth2.token-refresh.interval:PT15S}",
+            fixedDelayString = "${app.oauth2.token-refresh.interval:PT15S}")
+    public void refreshExpiringTokens() {
+        Instant now = Instant.now();
+        List<BoundedOAuth2AuthorizedClientService.Key> batch = authorizedClientService
+                .findRefreshableExpiringBefore(now.plus(skew), now.minus(idleTimeout), batchSize, nextStripe++);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        log.debug("Background token refresh: {} authorized clients expiring within {}", batch.size(), skew);
+
+        // Fixed delay + blocking here keeps batches from overlapping
+        Flux.fromIterable(batch)
+                .flatMap(this::refresh, maxConcurrency)
+                .then()
+                .timeout(batchTimeout, Mono.fromRunnable(() ->
+                        log.warn("Background token refresh batch did not finish within {}", batchTimeout)))
+                .block();
+    }
+
+    private Mono<Void> refresh(BoundedOAuth2AuthorizedClientService.Key key) {
+        OAuth2AuthorizeRequest request = OAuth2AuthorizeRequest
+                .withClientRegistrationId(key.clientRegistrationId())
+                .principal(key.principalName())
+                .build();
+
+        return backgroundManager.authorize(request)
+                .doOnSuccess(client -> refreshed.increment())
+                .onErrorResume(e -> {
+                    failed.increment();
+                    log.warn("Background token refresh failed for {}: {}", key.principalName(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,286 @@
+package com.pesexpo.apigateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous token revocation for logout
+ *
+ * - Logout only enqueues the tokens; the response no longer waits on /oauth2/revoke
+ * - A background worker drains the bounded queue in batches over a small pooled connection set
+ * - Transient failures (connect errors, 5xx) are retried with exponential backoff
+ * - Optionally, tokens still pending at shutdown are written to a local file and re-queued on startup;
+ *   the file holds live tokens, so it is owner-only (0600), replaced atomically, and deleted
+ *   once every restored token has been handled
+ *
+ * Metrics: gateway.oauth2.revocation.queue (gauge), gateway.oauth2.revocation{result=revoked|failed|dropped}
+ */
+@Slf4j
+@Component
+public class TokenRevocationQueue {
+
+    private record PendingRevocation(String tokenTypeHint, String token, boolean restored) { }
+
+    private final BlockingQueue<PendingRevocation> queue;
+    private final WebClient webClient;
+    private final ConnectionProvider connectionProvider;
+    private final String revocationUri;
+    private final String basicAuthorization;
+    private final int batchSize;
+    private final int concurrency;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final Path persistFile;
+
+    private final Counter revoked;
+    private final Counter failed;
+    private final Counter dropped;
+
+    // Restored revocations not yet handled; the persist file is kept until this reaches zero
+    private final AtomicInteger restoredPending = new AtomicInteger();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public TokenRevocationQueue(
+            @Value("${app.auth-server.url:http://localhost:9000}") String authServerUrl,
+            @Value("${spring.security.oauth2.client.registration.api-gateway-client.client-id:api-gateway}") String clientId,
+            @Value("${spring.security.oauth2.client.registration.api-gateway-client.client-secret:gateway-secret}") String clientSecret,
+            @Value("${app.oauth2.revocation.queue-capacity:10000}") int capacity,
+            @Value("${app.oauth2.revocation.batch-size:50}") int batchSize,
+            @Value("${app.oauth2.revocation.concurrency:4}") int concurrency,
+            @Value("${app.oauth2.revocation.max-retries:3}") int maxRetries,
+            @Value("${app.oauth2.revocation.retry-backoff:500ms}") Duration retryBackoff,
+            @Value("${app.oauth2.revocation.persist-file:}") String persistFile,
+            WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.revocationUri = authServerUrl + "/oauth2/revoke";
+        this.basicAuthorization = "Basic " + Base64.getEncoder()
+                .encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.persistFile = persistFile.isBlank() ? null : Path.of(persistFile);
+
+        this.connectionProvider = ConnectionProvider.builder("token-revocation")
+                .maxConnections(concurrency)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+
+        this.revoked = resultCounter(meterRegistry, "revoked");
+        this.failed = resultCounter(meterRegistry, "failed");
+        this.dropped = resultCounter(meterRegistry, "dropped");
+        Gauge.builder("gateway.oauth2.revocation.queue", queue, BlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.oauth2.revocation")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue the access and refresh token of an authorized client for revocation. Never blocks.
+     */
+    public void enqueue(OAuth2AuthorizedClient authorizedClient) {
+        if (authorizedClient.getAccessToken() != null) {
+            offer(new PendingRevocation("access_token", authorizedClient.getAccessToken().getTokenValue(), false));
+        }
+        if (authorizedClient.getRefreshToken() != null) {
+            offer(new PendingRevocation("refresh_token", authorizedClient.getRefreshToken().getTokenValue(), false));
+        }
+    }
+
+    private void offer(PendingRevocation revocation) {
+        if (!queue.offer(revocation)) {
+            dropped.increment();
+            log.warn("Token revocation queue full, dropping {}", revocation.tokenTypeHint());
+            handled(revocation);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        restorePersisted();
+        running = true;
+        worker = Thread.ofPlatform()
+                .name("token-revocation")
+                .daemon(true)
+                .start(this::drainLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        persistPending();
+        connectionProvider.dispose();
+    }
+
+    private void drainLoop() {
+        List<PendingRevocation> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingRevocation first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                Flux.fromIterable(batch)
+                        .flatMap(this::revoke, concurrency)
+                        .blockLast();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Put back what was taken so it can be persisted
+                batch.forEach(queue::offer);
+                return;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    // Interrupted by shutdown while blocking on the batch
+                    batch.forEach(queue::offer);
+                    return;
+                }
+                log.warn("Token revocation batch failed: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private Mono<Void> revoke(PendingRevocation revocation) {
+        return webClient
+                .post()
+                .uri(revocationUri)
+                .header(HttpHeaders.AUTHORIZATION, basicAuthorization)
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters
+                        .fromFormData("token", revocation.token())
+                        .with("token_type_hint", revocation.tokenTypeHint()))
+                .retrieve()
+                .toBodilessEntity()
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff).filter(TokenRevocationQueue::isTransient))
+                .doOnSuccess(response -> {
+                    revoked.increment();
+                    log.debug("Revoked {}", revocation.tokenTypeHint());
+                })
+                .onErrorResume(e -> {
+                    failed.increment();
+                    log.warn("Failed to revoke {}: {}", revocation.tokenTypeHint(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then()
+                .doOnSuccess(done -> handled(revocation));
+    }
+
+    private void handled(PendingRevocation revocation) {
+        if (revocation.restored() && restoredPending.decrementAndGet() == 0) {
+            try {
+                Files.deleteIfExists(persistFile);
+                log.info("Restored token revocations drained, deleted {}", persistFile);
+            } catch (IOException e) {
+                log.warn("Could not delete {}: {}", persistFile, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isTransient(Throwable e) {
+        return e instanceof WebClientRequestException
+                || (e instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError());
+    }
+
+    private void persistPending() {
+        if (persistFile == null || queue.isEmpty()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(queue.size());
+        for (PendingRevocation revocation : queue) {
+            lines.add(revocation.tokenTypeHint() + " " + revocation.token());
+        }
+        try {
+            // Owner-only temp file next to the target, then renamed over it: never half-written
+            Path directory = persistFile.toAbsolutePath().getParent();
+            Path temp = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                    ? Files.createTempFile(directory, ".revocations", ".tmp",
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                    : Files.createTempFile(directory, ".revocations", ".tmp");
+            try {
+                Files.write(temp, lines, StandardCharsets.UTF_8);
+                Files.move(temp, persistFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            log.info("Persisted {} pending token revocations to {}", lines.size(), persistFile);
+        } catch (IOException e) {
+            log.warn("Could not persist pending token revocations: {}", e.getMessage());
+        }
+    }
+
+    private void restorePersisted() {
+        if (persistFile == null || !Files.exists(persistFile)) {
+            return;
+        }
+        try {
+            List<PendingRevocation> restored = new ArrayList<>();
+            for (String line : Files.readAllLines(persistFile, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    restored.add(new PendingRevocation(line.substring(0, space), line.substring(space + 1), true));
+                }
+            }
+            if (restored.isEmpty()) {
+                Files.delete(persistFile);
+                return;
+            }
+            // Kept until drained: a crash before then restores the same tokens again
+            restoredPending.set(restored.size());
+            restored.forEach(this::offer);
+            log.info("Restored {} pending token revocations from {}", restored.size(), persistFile);
+        } catch (IOException e) {
+            log.warn("Could not restore pending token revocations: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pesexpo.apigateway.session;
+
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+
+import java.time.Duration;
+
+/**
+ * A cookie value that may span several cookies: NAME when it fits, NAME.0 .. NAME.n-1 when not
+ *
+ * - Browsers cap a single cookie at about 4 KB, name and attributes included
+ * - maxChunks bounds the total size; larger values are refused rather than sent, since every
+ *   request carries them (and the server's request header limit applies)
+ * - On write, chunks left over from a previous, larger value are expired
+ */
+public class ChunkedCookie {
+
+    private final String name;
+    private final int chunkSize;
+    private final int maxChunks;
+    private final boolean secure;
+
+    public ChunkedCookie(String name, int chunkSize, int maxChunks, boolean secure) {
+        this.name = name;
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+        this.secure = secure;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int maxSize() {
+        return chunkSize * maxChunks;
+    }
+
+    /**
+     * @return the joined value, or null when the cookie (or one of its chunks) is missing
+     */
+    public String read(ServerHttpRequest request) {
+        HttpCookie single = request.getCookies().getFirst(name);
+        if (single != null) {
+            return single.getValue();
+        }
+
+        StringBuilder value = null;
+        for (int i = 0; i < maxChunks; i++) {
+            HttpCookie chunk = request.getCookies().getFirst(chunkName(i));
+            if (chunk == null) {
+                break;
+            }
+            if (value == null) {
+                value = new StringBuilder(chunkSize * 2);
+            }
+            value.append(chunk.getValue());
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * @return false (and nothing written) when the value exceeds maxSize
+     */
+    public boolean write(ServerHttpRequest request, ServerHttpResponse response, String value, Duration maxAge) {
+        if (value.length() > maxSize()) {
+            return false;
+        }
+
+        int chunks = value.length() <= chunkSize ? 0 : (value.length() + chunkSize - 1) / chunkSize;
+        if (chunks == 0) {
+            response.addCookie(cookie(name, value, maxAge));
+        } else {
+            for (int i = 0; i < chunks; i++) {
+                int start = i * chunkSize;
+                String chunk = value.substring(start, Math.min(value.length(), start + chunkSize));
+                response.addCookie(cookie(chunkName(i), chunk, maxAge));
+            }
+        }
+
+        expireOthers(request, response, chunks);
+        return true;
+    }
+
+    public void clear(ServerHttpRequest request, ServerHttpResponse response) {
+        expireOthers(request, response, -1);
+    }
+
+    // Expire every cookie of this value in the request that was not just written (-1: all of them)
+    private void expireOthers(ServerHttpRequest request, ServerHttpResponse response, int written) {
+        if (written != 0 && request.getCookies().getFirst(name) != null) {
+            response.addCookie(cookie(name, "", Duration.ZERO));
+        }
+        for (int i = Math.max(written, 0); i < maxChunks; i++) {
+            String chunkName = chunkName(i);
+            if (request.getCookies().getFirst(chunkName) != null) {
+                response.addCookie(cookie(chunkName, "", Duration.ZERO));
+            }
+        }
+    }
+
+    private String chunkName(int index) {
+        return name + "." + index;
+    }
+
+    private ResponseCookie cookie(String cookieName, String value, Duration maxAge) {
+        return ResponseCookie.from(cookieName, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+}
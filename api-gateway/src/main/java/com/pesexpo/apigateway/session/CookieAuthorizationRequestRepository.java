@@ -0,0 +1,82 @@
+package com.pesexpo.apigateway.session;
+
+import org.springframework.security.oauth2.client.web.server.ServerAuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * OAuth2 authorization requests (state, nonce, PKCE verifier) in a short-lived sealed cookie
+ * instead of the WebSession, so the login callback can land on any gateway instance
+ *
+ * - One pending login per browser: starting a second one replaces the first
+ * - Only returned for a callback whose state parameter matches
+ */
+public class CookieAuthorizationRequestRepository
+        implements ServerAuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+
+    private static final String REQUEST = "request";
+
+    private final CookieSealer sealer;
+    private final ChunkedCookie cookie;
+    private final Duration timeout;
+    private final SessionSerializer serializer;
+
+    public CookieAuthorizationRequestRepository(CookieSealer sealer, ChunkedCookie cookie, Duration timeout,
+                                                SessionSerializer serializer) {
+        this.sealer = sealer;
+        this.cookie = cookie;
+        this.timeout = timeout;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizationRequest> loadAuthorizationRequest(ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> read(exchange));
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest,
+                                               ServerWebExchange exchange) {
+        if (authorizationRequest == null) {
+            return removeAuthorizationRequest(exchange).then();
+        }
+        return Mono.fromRunnable(() -> {
+            String sealed = sealer.seal(cookie.name(),
+                    serializer.serialize(Map.of(REQUEST, authorizationRequest)), Instant.now().plus(timeout));
+            if (!cookie.write(exchange.getRequest(), exchange.getResponse(), sealed, timeout)) {
+                throw new IllegalStateException("OAuth2 authorization request too large for a cookie");
+            }
+        });
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizationRequest> removeAuthorizationRequest(ServerWebExchange exchange) {
+        return Mono.fromSupplier(() -> {
+            OAuth2AuthorizationRequest authorizationRequest = read(exchange);
+            cookie.clear(exchange.getRequest(), exchange.getResponse());
+            return authorizationRequest;
+        });
+    }
+
+    private OAuth2AuthorizationRequest read(ServerWebExchange exchange) {
+        String state = exchange.getRequest().getQueryParams().getFirst(OAuth2ParameterNames.STATE);
+        String value = cookie.read(exchange.getRequest());
+        if (state == null || value == null) {
+            return null;
+        }
+
+        CookieSealer.Unsealed unsealed = sealer.unseal(cookie.name(), value);
+        if (unsealed == null) {
+            return null;
+        }
+        Object request = serializer.deserialize(unsealed.value()).get(REQUEST);
+        return request instanceof OAuth2AuthorizationRequest authorizationRequest
+                && state.equals(authorizationRequest.getState()) ? authorizationRequest : null;
+    }
+}
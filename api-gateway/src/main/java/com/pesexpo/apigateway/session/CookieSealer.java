@@ -0,0 +1,192 @@
+package com.pesexpo.apigateway.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Authenticated encryption (AES-GCM) of cookie values, with a key ring for rotation
+ *
+ * - Sealed form: version | key id (4 bytes) | IV (12 bytes) | ciphertext + tag, base64url
+ * - The first key seals, every key unseals: to rotate, prepend the new key, then drop the
+ *   old one once cookies sealed with it have expired; values opened with an old key are
+ *   reported so callers can seal them again
+ * - The expiry is sealed with the value, and the purpose (cookie name) is bound as
+ *   associated data, so a value cannot be replayed late or under another cookie
+ * - Without configured keys a random key is generated: cookies then only open on this
+ *   instance and not after a restart
+ *
+ * Metrics: gateway.session.cookie.unseal{result=ok|stale-key|expired|invalid}
+ */
+@Slf4j
+public class CookieSealer {
+
+    private static final byte VERSION = 1;
+    private static final int KEY_ID_LENGTH = 4;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HEADER_LENGTH = 1 + KEY_ID_LENGTH + IV_LENGTH;
+
+    /**
+     * @param staleKey sealed with a key other than the current one
+     */
+    public record Unsealed(byte[] value, boolean staleKey) { }
+
+    private record Key(byte[] id, SecretKeySpec spec) { }
+
+    private final List<Key> keys;
+    private final SecureRandom random = new SecureRandom();
+
+    private final Counter opened;
+    private final Counter openedWithStaleKey;
+    private final Counter expired;
+    private final Counter invalid;
+
+    /**
+     * @param base64Keys AES keys (16, 24 or 32 bytes, base64), current key first
+     */
+    public CookieSealer(List<String> base64Keys, MeterRegistry meterRegistry) {
+        List<Key> ring = new ArrayList<>();
+        for (String base64Key : base64Keys) {
+            if (!base64Key.isBlank()) {
+                ring.add(key(Base64.getDecoder().decode(base64Key.trim())));
+            }
+        }
+        if (ring.isEmpty()) {
+            log.warn("No session cookie keys configured (app.session.cookie.keys): using a random key, "
+                    + "sessions will not survive a restart or move between instances");
+            byte[] generated = new byte[32];
+            random.nextBytes(generated);
+            ring.add(key(generated));
+        }
+        this.keys = List.copyOf(ring);
+
+        this.opened = unsealCounter(meterRegistry, "ok");
+        this.openedWithStaleKey = unsealCounter(meterRegistry, "stale-key");
+        this.expired = unsealCounter(meterRegistry, "expired");
+        this.invalid = unsealCounter(meterRegistry, "invalid");
+    }
+
+    private static Counter unsealCounter(MeterRegistry meterRegistry, String result) {
+        return meterRegistry.counter("gateway.session.cookie.unseal", "result", result);
+    }
+
+    public String seal(String purpose, byte[] value, Instant expiresAt) {
+        Key key = keys.get(0);
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        ByteBuffer plaintext = ByteBuffer.allocate(Long.BYTES + value.length)
+                .putLong(expiresAt.getEpochSecond())
+                .put(value)
+                .flip();
+        try {
+            Cipher cipher = cipher(Cipher.ENCRYPT_MODE, key, iv, purpose);
+            ByteBuffer sealed = ByteBuffer.allocate(HEADER_LENGTH + cipher.getOutputSize(plaintext.remaining()))
+                    .put(VERSION)
+                    .put(key.id())
+                    .put(iv);
+            cipher.doFinal(plaintext, sealed);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not seal cookie value", e);
+        }
+    }
+
+    /**
+     * @return the value, or null when it is malformed, forged, sealed with an unknown key or expired
+     */
+    public Unsealed unseal(String purpose, String sealed) {
+        byte[] data;
+        try {
+            data = Base64.getUrlDecoder().decode(sealed);
+        } catch (IllegalArgumentException e) {
+            invalid.increment();
+            return null;
+        }
+        if (data.length < HEADER_LENGTH + TAG_BITS / 8 + Long.BYTES || data[0] != VERSION) {
+            invalid.increment();
+            return null;
+        }
+
+        int keyIndex = keyIndex(data);
+        if (keyIndex < 0) {
+            invalid.increment();
+            return null;
+        }
+
+        ByteBuffer plaintext;
+        try {
+            Key key = keys.get(keyIndex);
+            Cipher cipher = cipher(Cipher.DECRYPT_MODE, key, slice(data, 1 + KEY_ID_LENGTH, IV_LENGTH), purpose);
+            plaintext = ByteBuffer.wrap(cipher.doFinal(data, HEADER_LENGTH, data.length - HEADER_LENGTH));
+        } catch (AEADBadTagException e) {
+            invalid.increment();
+            return null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not unseal cookie value", e);
+        }
+
+        if (plaintext.getLong() <= Instant.now().getEpochSecond()) {
+            expired.increment();
+            return null;
+        }
+        byte[] value = new byte[plaintext.remaining()];
+        plaintext.get(value);
+
+        boolean staleKey = keyIndex > 0;
+        (staleKey ? openedWithStaleKey : opened).increment();
+        return new Unsealed(value, staleKey);
+    }
+
+    private int keyIndex(byte[] data) {
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] id = keys.get(i).id();
+            if (Arrays.equals(id, 0, KEY_ID_LENGTH, data, 1, 1 + KEY_ID_LENGTH)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Cipher instances are not thread-safe; creating one per call is cheap next to the AES work
+    private static Cipher cipher(int mode, Key key, byte[] iv, String purpose) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, key.spec(), new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(purpose.getBytes(StandardCharsets.US_ASCII));
+        return cipher;
+    }
+
+    private static Key key(byte[] material) {
+        if (material.length != 16 && material.length != 24 && material.length != 32) {
+            throw new IllegalArgumentException("Session cookie keys must be 16, 24 or 32 bytes");
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(material);
+            return new Key(slice(digest, 0, KEY_ID_LENGTH), new SecretKeySpec(material, "AES"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(data, offset, slice, 0, length);
+        return slice;
+    }
+}
@@ -0,0 +1,525 @@
+package com.pesexpo.apigateway.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSession store shared by all gateway instances through a JDBC table, with a near-cache
+ *
+ * - Near-cache: recently used sessions are kept deserialized in memory; within
+ *   revalidateInterval they are used without any database access, after that a version-only
+ *   query decides whether the cached attributes are still current
+ * - Writes: a session whose attributes changed (put/remove of an attribute) is written in
+ *   full with a new version; an unchanged session only queues its last-access time, and
+ *   queued touches are flushed in one batch every touch interval
+ * - Full writes are compare-and-set on the version the request read; when another node wrote
+ *   the session meanwhile, it is reloaded and this request's put/removed attributes are
+ *   reapplied on top (up to maxWriteConflicts times)
+ * - In-place mutation of an attribute object is not detected; attributes are replaced, as the
+ *   security context and authorization request repositories already do
+ * - JDBC calls run on the bounded elastic scheduler, never on the event loop
+ *
+ * Metrics: gateway.session.store.lookups{result=near-cache|validated|loaded|miss},
+ * gateway.session.store.writes{type=full|touch|delete|conflict}, gateway.session.store.near-cache (gauge)
+ */
+@Slf4j
+public class JdbcWebSessionStore implements WebSessionStore {
+
+    private static final String COLUMNS = "version, creation_time, last_access_time, max_idle_seconds, attributes";
+
+    private record CachedSession(
+            String id,
+            long version,
+            Instant creationTime,
+            Instant lastAccessTime,
+            Duration maxIdleTime,
+            Map<String, Object> attributes,
+            long validatedAtNanos
+    ) {
+
+        private boolean isExpired(Instant now) {
+            return lastAccessTime.plus(maxIdleTime).isBefore(now);
+        }
+    }
+
+    private record Touch(long lastAccessMillis, long expiresAtMillis) { }
+
+    private final JdbcTemplate jdbc;
+    private final String table;
+    private final Duration defaultMaxIdleTime;
+    private final long revalidateNanos;
+    private final int maxWriteConflicts;
+    private final SessionSerializer serializer;
+    private final Scheduler scheduler = Schedulers.boundedElastic();
+
+    // Access-ordered map = LRU iteration order; guarded by itself
+    private final LinkedHashMap<String, CachedSession> nearCache = new LinkedHashMap<>(256, 0.75f, true);
+    private final int nearCacheSize;
+
+    private final Map<String, Touch> pendingTouches = new ConcurrentHashMap<>();
+
+    private final Counter nearCacheHits;
+    private final Counter validated;
+    private final Counter loaded;
+    private final Counter missing;
+    private final Counter fullWrites;
+    private final Counter touchWrites;
+    private final Counter deletes;
+    private final Counter writeConflicts;
+
+    public JdbcWebSessionStore(JdbcTemplate jdbc, String table, Duration defaultMaxIdleTime,
+                               Duration revalidateInterval, int nearCacheSize, int maxWriteConflicts,
+                               SessionSerializer serializer, MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.table = table;
+        this.defaultMaxIdleTime = defaultMaxIdleTime;
+        this.revalidateNanos = revalidateInterval.toNanos();
+        this.nearCacheSize = nearCacheSize;
+        this.maxWriteConflicts = maxWriteConflicts;
+        this.serializer = serializer;
+
+        this.nearCacheHits = meterRegistry.counter("gateway.session.store.lookups", "result", "near-cache");
+        this.validated = meterRegistry.counter("gateway.session.store.lookups", "result", "validated");
+        this.loaded = meterRegistry.counter("gateway.session.store.lookups", "result", "loaded");
+        this.missing = meterRegistry.counter("gateway.session.store.lookups", "result", "miss");
+        this.fullWrites = meterRegistry.counter("gateway.session.store.writes", "type", "full");
+        this.touchWrites = meterRegistry.counter("gateway.session.store.writes", "type", "touch");
+        this.deletes = meterRegistry.counter("gateway.session.store.writes", "type", "delete");
+        this.writeConflicts = meterRegistry.counter("gateway.session.store.writes", "type", "conflict");
+        Gauge.builder("gateway.session.store.near-cache", this, JdbcWebSessionStore::nearCacheSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * DDL for the embedded stand-in (H2); other databases create the table themselves
+     */
+    public void initializeSchema() {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "id VARCHAR(64) NOT NULL PRIMARY KEY, "
+                + "version BIGINT NOT NULL, "
+                + "creation_time BIGINT NOT NULL, "
+                + "last_access_time BIGINT NOT NULL, "
+                + "max_idle_seconds BIGINT NOT NULL, "
+                + "expires_at BIGINT NOT NULL, "
+                + "attributes BLOB NOT NULL)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + table + "_expires_ix ON " + table + " (expires_at)");
+    }
+
+    @Override
+    public Mono<WebSession> createWebSession() {
+        return Mono.fromSupplier(() -> new JdbcWebSession(newId(), Instant.now(), defaultMaxIdleTime));
+    }
+
+    @Override
+    public Mono<WebSession> retrieveSession(String sessionId) {
+        CachedSession cached = cached(sessionId);
+        Instant now = Instant.now();
+        if (cached != null && System.nanoTime() - cached.validatedAtNanos() < revalidateNanos && !cached.isExpired(now)) {
+            nearCacheHits.increment();
+            return Mono.just(new JdbcWebSession(cached, now));
+        }
+        return Mono.fromCallable(() -> load(sessionId, cached))
+                .subscribeOn(scheduler)
+                .map(session -> new JdbcWebSession(session, Instant.now()));
+    }
+
+    @Override
+    public Mono<Void> removeSession(String sessionId) {
+        forget(sessionId);
+        return Mono.<Void>fromRunnable(() -> delete(sessionId)).subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            ((JdbcWebSession) webSession).lastAccessTime = Instant.now();
+            return webSession;
+        });
+    }
+
+    /**
+     * Write queued last-access times in one batch; only ever moves them forward
+     */
+    @Scheduled(fixedDelayString = "${app.session.jdbc.touch-interval:PT10S}")
+    public void flushTouches() {
+        if (pendingTouches.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>();
+        Iterator<Map.Entry<String, Touch>> it = pendingTouches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Touch> entry = it.next();
+            Touch touch = entry.getValue();
+            if (pendingTouches.remove(entry.getKey(), touch)) {
+                batch.add(new Object[]{touch.lastAccessMillis(), touch.expiresAtMillis(), entry.getKey(), touch.lastAccessMillis()});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbc.batchUpdate("UPDATE " + table + " SET last_access_time = ?, expires_at = ? "
+                    + "WHERE id = ? AND last_access_time < ?", batch);
+            touchWrites.increment(batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Session store: failed to write {} last-access times: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.session.jdbc.cleanup-interval:PT1M}")
+    public void deleteExpired() {
+        try {
+            int removed = jdbc.update("DELETE FROM " + table + " WHERE expires_at < ?", System.currentTimeMillis());
+            if (removed > 0) {
+                log.debug("Session store: deleted {} expired sessions", removed);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Session store: expired session cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    public int nearCacheSize() {
+        synchronized (nearCache) {
+            return nearCache.size();
+        }
+    }
+
+    private CachedSession load(String id, CachedSession cached) {
+        long now = System.currentTimeMillis();
+        if (cached != null) {
+            List<Long> versions = jdbc.queryForList(
+                    "SELECT version FROM " + table + " WHERE id = ? AND expires_at > ?", Long.class, id, now);
+            if (!versions.isEmpty() && versions.get(0) == cached.version()) {
+                validated.increment();
+                return remember(new CachedSession(id, cached.version(), cached.creationTime(),
+                        latest(cached.lastAccessTime(), id), cached.maxIdleTime(), cached.attributes(), System.nanoTime()));
+            }
+        }
+
+        CachedSession session = select(id, now);
+        if (session == null) {
+            missing.increment();
+            forget(id);
+            return null;
+        }
+        loaded.increment();
+        return remember(session);
+    }
+
+    // The row if it expires after expiresAfter (epoch millis)
+    private CachedSession select(String id, long expiresAfter) {
+        List<CachedSession> rows = jdbc.query(
+                "SELECT " + COLUMNS + " FROM " + table + " WHERE id = ? AND expires_at > ?",
+                (rs, i) -> new CachedSession(id,
+                        rs.getLong("version"),
+                        Instant.ofEpochMilli(rs.getLong("creation_time")),
+                        Instant.ofEpochMilli(rs.getLong("last_access_time")),
+                        Duration.ofSeconds(rs.getLong("max_idle_seconds")),
+                        serializer.deserialize(rs.getBytes("attributes")),
+                        System.nanoTime()),
+                id, expiresAfter);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void persist(JdbcWebSession session, Map<String, Object> attributes) {
+        // Never written under this id: insert; otherwise a missing row means it was deleted (logout)
+        boolean newRow = session.persistedAttributes == null || session.previousId != null;
+        if (session.previousId != null) {
+            delete(session.previousId);
+            session.previousId = null;
+        }
+
+        long lastAccess = session.lastAccessTime.toEpochMilli();
+        long maxIdle = session.maxIdleTime.toSeconds();
+        long expiresAt = session.lastAccessTime.plus(session.maxIdleTime).toEpochMilli();
+
+        // Compare-and-set on the version this request read; another node may have written since
+        Map<String, Object> base = session.persistedAttributes;
+        long expected = session.version;
+        for (int conflicts = 0; ; conflicts++) {
+            long version = expected + 1;
+            byte[] data = serializer.serialize(attributes);
+            boolean stored = newRow && conflicts == 0
+                    ? insert(session, version, lastAccess, maxIdle, data, expiresAt)
+                    : jdbc.update("UPDATE " + table + " SET version = ?, last_access_time = ?, max_idle_seconds = ?, "
+                                    + "expires_at = ?, attributes = ? WHERE id = ? AND version = ?",
+                            version, lastAccess, maxIdle, expiresAt, data, session.id, expected) == 1;
+            if (stored) {
+                written(session, version, attributes);
+                return;
+            }
+
+            CachedSession current = select(session.id, Long.MIN_VALUE);
+            if (current == null) {
+                // Deleted (logout, expiry) on another node meanwhile: not resurrected
+                forget(session.id);
+                return;
+            }
+            writeConflicts.increment();
+            if (conflicts == maxWriteConflicts) {
+                log.warn("Session store: gave up writing session after {} concurrent updates", conflicts + 1);
+                forget(session.id);
+                return;
+            }
+            // Reapply this request's changes on top of what the other node wrote
+            attributes = merge(current.attributes(), base, attributes);
+            base = current.attributes();
+            expected = current.version();
+        }
+    }
+
+    // False if a row with that id exists already
+    private boolean insert(JdbcWebSession session, long version, long lastAccess, long maxIdle,
+                           byte[] data, long expiresAt) {
+        try {
+            jdbc.update("INSERT INTO " + table + " (id, " + COLUMNS + ", expires_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    session.id, version, session.creationTime.toEpochMilli(), lastAccess, maxIdle, data, expiresAt);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private void written(JdbcWebSession session, long version, Map<String, Object> attributes) {
+        fullWrites.increment();
+        pendingTouches.remove(session.id);
+
+        session.version = version;
+        session.persistedAttributes = attributes;
+        session.persistedMaxIdleTime = session.maxIdleTime;
+        remember(new CachedSession(session.id, version, session.creationTime, session.lastAccessTime,
+                session.maxIdleTime, attributes, System.nanoTime()));
+    }
+
+    // current + the attributes this request put (new identity) or removed relative to base
+    private static Map<String, Object> merge(Map<String, Object> current, Map<String, Object> base,
+                                             Map<String, Object> attributes) {
+        Map<String, Object> merged = new HashMap<>(current);
+        Map<String, Object> before = base != null ? base : Map.of();
+        attributes.forEach((name, value) -> {
+            if (before.get(name) != value) {
+                merged.put(name, value);
+            }
+        });
+        before.keySet().forEach(name -> {
+            if (!attributes.containsKey(name)) {
+                merged.remove(name);
+            }
+        });
+        return Map.copyOf(merged);
+    }
+
+    private void delete(String id) {
+        jdbc.update("DELETE FROM " + table + " WHERE id = ?", id);
+        deletes.increment();
+    }
+
+    private void touch(JdbcWebSession session) {
+        long lastAccess = session.lastAccessTime.toEpochMilli();
+        long expiresAt = session.lastAccessTime.plus(session.maxIdleTime).toEpochMilli();
+        pendingTouches.merge(session.id, new Touch(lastAccess, expiresAt),
+                (a, b) -> a.lastAccessMillis() >= b.lastAccessMillis() ? a : b);
+
+        synchronized (nearCache) {
+            CachedSession cached = nearCache.get(session.id);
+            if (cached != null && cached.version() == session.version) {
+                nearCache.put(session.id, new CachedSession(cached.id(), cached.version(), cached.creationTime(),
+                        session.lastAccessTime, cached.maxIdleTime(), cached.attributes(), cached.validatedAtNanos()));
+            }
+        }
+    }
+
+    // A touch queued on this node may be newer than what the table holds
+    private Instant latest(Instant lastAccessTime, String id) {
+        Touch touch = pendingTouches.get(id);
+        return touch != null && touch.lastAccessMillis() > lastAccessTime.toEpochMilli()
+                ? Instant.ofEpochMilli(touch.lastAccessMillis())
+                : lastAccessTime;
+    }
+
+    private CachedSession cached(String id) {
+        synchronized (nearCache) {
+            return nearCache.get(id);
+        }
+    }
+
+    private CachedSession remember(CachedSession session) {
+        synchronized (nearCache) {
+            nearCache.put(session.id(), session);
+            Iterator<CachedSession> eldest = nearCache.values().iterator();
+            while (nearCache.size() > nearCacheSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return session;
+    }
+
+    private void forget(String id) {
+        synchronized (nearCache) {
+            nearCache.remove(id);
+        }
+        pendingTouches.remove(id);
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private class JdbcWebSession implements WebSession {
+
+        private volatile String id;
+        private volatile String previousId;
+        private final Instant creationTime;
+        private volatile Instant lastAccessTime;
+        private volatile Duration maxIdleTime;
+        private final Map<String, Object> attributes;
+        private volatile boolean started;
+
+        // Attribute values as last written; compared by identity to detect changes
+        private volatile Map<String, Object> persistedAttributes;
+        private volatile Duration persistedMaxIdleTime;
+        private volatile long version;
+
+        private JdbcWebSession(String id, Instant creationTime, Duration maxIdleTime) {
+            this.id = id;
+            this.creationTime = creationTime;
+            this.lastAccessTime = creationTime;
+            this.maxIdleTime = maxIdleTime;
+            this.attributes = new ConcurrentHashMap<>();
+        }
+
+        private JdbcWebSession(CachedSession cached, Instant now) {
+            this.id = cached.id();
+            this.creationTime = cached.creationTime();
+            this.lastAccessTime = now;
+            this.maxIdleTime = cached.maxIdleTime();
+            this.attributes = new ConcurrentHashMap<>(cached.attributes());
+            this.persistedAttributes = cached.attributes();
+            this.persistedMaxIdleTime = cached.maxIdleTime();
+            this.version = cached.version();
+            this.started = true;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public boolean isStarted() {
+            return started || !attributes.isEmpty();
+        }
+
+        @Override
+        public Mono<Void> changeSessionId() {
+            return Mono.fromRunnable(() -> {
+                String current = id;
+                if (persistedAttributes != null && previousId == null) {
+                    previousId = current;
+                }
+                forget(current);
+                id = newId();
+            });
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            String current = id;
+            String previous = previousId;
+            attributes.clear();
+            started = false;
+            forget(current);
+            return Mono.<Void>fromRunnable(() -> {
+                        delete(current);
+                        if (previous != null) {
+                            delete(previous);
+                        }
+                    })
+                    .subscribeOn(scheduler);
+        }
+
+        @Override
+        public Mono<Void> save() {
+            if (!isStarted()) {
+                return Mono.empty();
+            }
+            started = true;
+            if (persistedAttributes != null && previousId == null && unchanged()) {
+                touch(this);
+                return Mono.empty();
+            }
+            Map<String, Object> snapshot = Map.copyOf(attributes);
+            return Mono.<Void>fromRunnable(() -> persist(this, snapshot)).subscribeOn(scheduler);
+        }
+
+        @Override
+        public boolean isExpired() {
+            return started && lastAccessTime.plus(maxIdleTime).isBefore(Instant.now());
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return creationTime;
+        }
+
+        @Override
+        public Instant getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        @Override
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        @Override
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        private boolean unchanged() {
+            Map<String, Object> persisted = persistedAttributes;
+            if (persisted.size() != attributes.size() || !maxIdleTime.equals(persistedMaxIdleTime)) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                if (persisted.get(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
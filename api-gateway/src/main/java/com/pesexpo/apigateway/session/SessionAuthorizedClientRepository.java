@@ -0,0 +1,50 @@
+package com.pesexpo.apigateway.session;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorized clients (tokens) kept in the WebSession, for the shared session store
+ *
+ * - With app.session.store=jdbc the tokens travel with the session row, so any gateway instance
+ *   can relay and refresh them (the in-memory authorized client service is per node)
+ * - One attribute per client registration, replaced on every save: JdbcWebSessionStore detects
+ *   changes by identity, so a refreshed token is written back instead of mutated in place
+ */
+public class SessionAuthorizedClientRepository implements ServerOAuth2AuthorizedClientRepository {
+
+    private static final String ATTRIBUTE_PREFIX = SessionAuthorizedClientRepository.class.getName() + ".";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId,
+                                                                          Authentication principal,
+                                                                          ServerWebExchange exchange) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        return exchange.getSession()
+                .mapNotNull(session -> (T) session.getAttribute(ATTRIBUTE_PREFIX + clientRegistrationId));
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+                                           ServerWebExchange exchange) {
+        Assert.notNull(authorizedClient, "authorizedClient cannot be null");
+        String attribute = ATTRIBUTE_PREFIX + authorizedClient.getClientRegistration().getRegistrationId();
+        return exchange.getSession()
+                .doOnNext(session -> session.getAttributes().put(attribute, authorizedClient))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                             ServerWebExchange exchange) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        return exchange.getSession()
+                .doOnNext(session -> session.getAttributes().remove(ATTRIBUTE_PREFIX + clientRegistrationId))
+                .then();
+    }
+}
@@ -0,0 +1,421 @@
+package com.pesexpo.apigateway.session;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.pesexpo.apigateway.security.UserContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stateless login: the OIDC login and its authorized client (tokens) sealed into one cookie
+ *
+ * - Security context repository and authorized client repository in one, so both halves of a
+ *   login land in the same cookie; any instance serves any request without a session lookup
+ * - The cookie is opened once per request (exchange attribute) and only written back when the
+ *   login changed (login, token refresh, logout) or was sealed with a rotated-out key
+ * - Payload: ID token, authority names and the token values with epoch-second timestamps,
+ *   deflated; the principal's claims are read back from the ID token
+ * - Absolute lifetime (max-age from login); token refreshes do not extend it
+ * - Nothing to revoke server-side: logout expires the cookie, and the refresh token is
+ *   revoked at the authorization server (see LogoutService)
+ *
+ * Metrics: gateway.session.cookie.size (sealed bytes), gateway.session.cookie.oversize
+ */
+@Slf4j
+public class SessionCookieRepository implements ServerSecurityContextRepository, ServerOAuth2AuthorizedClientRepository {
+
+    private static final String STATE_ATTRIBUTE = SessionCookieRepository.class.getName() + ".STATE";
+    // 2 added the refresh token's expiry; format 1 cookies still open
+    private static final byte FORMAT = 2;
+    private static final long NONE = Long.MIN_VALUE;
+
+    // Decoded cookie of one exchange; only touched along that exchange's (sequential) chain
+    private static final class State {
+
+        private long loginAt;
+        private String registrationId;
+        private String nameAttributeKey;
+        private String idToken;
+        private List<String> authorities = List.of();
+
+        private String accessToken;
+        private long accessIssuedAt = NONE;
+        private long accessExpiresAt = NONE;
+        private List<String> scopes = List.of();
+        private String refreshToken;
+        private long refreshIssuedAt = NONE;
+        private long refreshExpiresAt = NONE;
+
+        private SecurityContext context;
+        private boolean dirty;
+
+        private boolean isEmpty() {
+            return idToken == null && accessToken == null;
+        }
+    }
+
+    private final CookieSealer sealer;
+    private final ChunkedCookie cookie;
+    private final Duration maxAge;
+    private final ReactiveClientRegistrationRepository clientRegistrationRepository;
+
+    private final DistributionSummary sealedSize;
+    private final Counter oversize;
+
+    public SessionCookieRepository(CookieSealer sealer, ChunkedCookie cookie, Duration maxAge,
+                                   ReactiveClientRegistrationRepository clientRegistrationRepository,
+                                   MeterRegistry meterRegistry) {
+        this.sealer = sealer;
+        this.cookie = cookie;
+        this.maxAge = maxAge;
+        this.clientRegistrationRepository = clientRegistrationRepository;
+
+        this.sealedSize = DistributionSummary.builder("gateway.session.cookie.size")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.oversize = meterRegistry.counter("gateway.session.cookie.oversize");
+    }
+
+    // --- ServerSecurityContextRepository ---
+
+    @Override
+    public Mono<Void> save(ServerWebExchange exchange, SecurityContext context) {
+        State state = state(exchange);
+        Authentication authentication = context != null ? context.getAuthentication() : null;
+        if (authentication == null) {
+            clear(state);
+            return Mono.empty();
+        }
+        if (!(authentication instanceof OAuth2AuthenticationToken token) || !(token.getPrincipal() instanceof OidcUser user)) {
+            log.debug("Session cookie: {} is not an OIDC login, not stored", authentication.getClass().getSimpleName());
+            return Mono.empty();
+        }
+
+        return clientRegistrationRepository.findByRegistrationId(token.getAuthorizedClientRegistrationId())
+                .doOnNext(registration -> {
+                    state.loginAt = Instant.now().getEpochSecond();
+                    state.registrationId = registration.getRegistrationId();
+                    state.nameAttributeKey = nameAttributeKey(registration);
+                    state.idToken = user.getIdToken().getTokenValue();
+                    state.authorities = authorityNames(token.getAuthorities());
+                    state.context = context;
+                    state.dirty = true;
+                })
+                .then();
+    }
+
+    @Override
+    public Mono<SecurityContext> load(ServerWebExchange exchange) {
+        State state = state(exchange);
+        if (state.idToken == null) {
+            return Mono.empty();
+        }
+        if (state.context == null) {
+            try {
+                OAuth2AuthenticationToken authentication = authentication(state);
+                state.context = new SecurityContextImpl(authentication);
+                exchange.getAttributes().put(UserContext.SESSION_ATTRIBUTE, UserContext.from(authentication));
+            } catch (ParseException | IllegalArgumentException e) {
+                log.warn("Session cookie: unreadable ID token, clearing login: {}", e.getMessage());
+                clear(state);
+                return Mono.empty();
+            }
+        }
+        return Mono.just(state.context);
+    }
+
+    // --- ServerOAuth2AuthorizedClientRepository ---
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId,
+                                                                          Authentication principal,
+                                                                          ServerWebExchange exchange) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        State state = state(exchange);
+        if (state.accessToken == null || !clientRegistrationId.equals(state.registrationId)) {
+            return Mono.empty();
+        }
+
+        String principalName = principal.getName();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, state.accessToken,
+                instant(state.accessIssuedAt), instant(state.accessExpiresAt), Set.copyOf(state.scopes));
+        OAuth2RefreshToken refreshToken = state.refreshToken != null
+                ? new OAuth2RefreshToken(state.refreshToken, instant(state.refreshIssuedAt),
+                        instant(state.refreshExpiresAt))
+                : null;
+        return clientRegistrationRepository.findByRegistrationId(clientRegistrationId)
+                .map(registration -> (T) new OAuth2AuthorizedClient(registration, principalName, accessToken, refreshToken));
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+                                           ServerWebExchange exchange) {
+        Assert.notNull(authorizedClient, "authorizedClient cannot be null");
+        return Mono.fromRunnable(() -> {
+            State state = state(exchange);
+            OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+            OAuth2RefreshToken refreshToken = authorizedClient.getRefreshToken();
+
+            if (state.loginAt == 0) {
+                state.loginAt = Instant.now().getEpochSecond();
+            }
+            state.registrationId = authorizedClient.getClientRegistration().getRegistrationId();
+            state.accessToken = accessToken.getTokenValue();
+            state.accessIssuedAt = epochSecond(accessToken.getIssuedAt());
+            state.accessExpiresAt = epochSecond(accessToken.getExpiresAt());
+            state.scopes = List.copyOf(accessToken.getScopes());
+            state.refreshToken = refreshToken != null ? refreshToken.getTokenValue() : null;
+            state.refreshIssuedAt = refreshToken != null ? epochSecond(refreshToken.getIssuedAt()) : NONE;
+            state.refreshExpiresAt = refreshToken != null ? epochSecond(refreshToken.getExpiresAt()) : NONE;
+            state.dirty = true;
+        });
+    }
+
+    /**
+     * Removing the tokens ends the login too (logout, or a refresh token the server rejected)
+     */
+    @Override
+    public Mono<Void> removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+                                             ServerWebExchange exchange) {
+        Assert.hasText(clientRegistrationId, "clientRegistrationId cannot be empty");
+        return Mono.fromRunnable(() -> {
+            State state = state(exchange);
+            if (clientRegistrationId.equals(state.registrationId)) {
+                clear(state);
+            }
+        });
+    }
+
+    // --- Cookie ---
+
+    private State state(ServerWebExchange exchange) {
+        State state = exchange.getAttribute(STATE_ATTRIBUTE);
+        if (state == null) {
+            State read = read(exchange);
+            exchange.getAttributes().put(STATE_ATTRIBUTE, read);
+            exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> write(exchange, read)));
+            state = read;
+        }
+        return state;
+    }
+
+    private State read(ServerWebExchange exchange) {
+        State state = new State();
+        String value = cookie.read(exchange.getRequest());
+        if (value == null) {
+            return state;
+        }
+
+        CookieSealer.Unsealed unsealed = sealer.unseal(cookie.name(), value);
+        if (unsealed == null) {
+            // Forged, expired or sealed with a retired key: drop it
+            state.dirty = true;
+            return state;
+        }
+        try {
+            decode(unsealed.value(), state);
+        } catch (IOException e) {
+            log.warn("Session cookie: unreadable payload, clearing login: {}", e.getMessage());
+            clear(state);
+            return state;
+        }
+        state.dirty = unsealed.staleKey();
+        return state;
+    }
+
+    private void write(ServerWebExchange exchange, State state) {
+        if (!state.dirty) {
+            return;
+        }
+        if (state.isEmpty()) {
+            cookie.clear(exchange.getRequest(), exchange.getResponse());
+            return;
+        }
+
+        Instant expiresAt = Instant.ofEpochSecond(state.loginAt).plus(maxAge);
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        String sealed = sealer.seal(cookie.name(), encode(state), expiresAt);
+        sealedSize.record(sealed.length());
+        if (remaining.isNegative() || !cookie.write(exchange.getRequest(), exchange.getResponse(), sealed, remaining)) {
+            if (!remaining.isNegative()) {
+                oversize.increment();
+                log.warn("Session cookie: sealed login is {} bytes, over the {} byte limit; not stored",
+                        sealed.length(), cookie.maxSize());
+            }
+            cookie.clear(exchange.getRequest(), exchange.getResponse());
+        }
+    }
+
+    private static void clear(State state) {
+        state.loginAt = 0;
+        state.registrationId = null;
+        state.nameAttributeKey = null;
+        state.idToken = null;
+        state.authorities = List.of();
+        state.accessToken = null;
+        state.accessIssuedAt = NONE;
+        state.accessExpiresAt = NONE;
+        state.scopes = List.of();
+        state.refreshToken = null;
+        state.refreshIssuedAt = NONE;
+        state.refreshExpiresAt = NONE;
+        state.context = null;
+        state.dirty = true;
+    }
+
+    // --- Payload ---
+
+    private static byte[] encode(State state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeByte(FORMAT);
+            out.writeLong(state.loginAt);
+            writeString(out, state.registrationId);
+            writeString(out, state.nameAttributeKey);
+            writeString(out, state.idToken);
+            writeStrings(out, state.authorities);
+            writeString(out, state.accessToken);
+            out.writeLong(state.accessIssuedAt);
+            out.writeLong(state.accessExpiresAt);
+            writeStrings(out, state.scopes);
+            writeString(out, state.refreshToken);
+            out.writeLong(state.refreshIssuedAt);
+            out.writeLong(state.refreshExpiresAt);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode session cookie", e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] data, State state) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            byte format = in.readByte();
+            if (format != 1 && format != FORMAT) {
+                throw new IOException("unknown format");
+            }
+            state.loginAt = in.readLong();
+            state.registrationId = readString(in);
+            state.nameAttributeKey = readString(in);
+            state.idToken = readString(in);
+            state.authorities = readStrings(in);
+            state.accessToken = readString(in);
+            state.accessIssuedAt = in.readLong();
+            state.accessExpiresAt = in.readLong();
+            state.scopes = readStrings(in);
+            state.refreshToken = readString(in);
+            state.refreshIssuedAt = in.readLong();
+            state.refreshExpiresAt = format >= 2 ? in.readLong() : NONE;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeShort(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readUnsignedShort();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return List.copyOf(values);
+    }
+
+    // --- Principal ---
+
+    // The ID token was validated at login and has been sealed since; only its claims are read here
+    private static OAuth2AuthenticationToken authentication(State state) throws ParseException {
+        JWTClaimsSet claims = JWTParser.parse(state.idToken).getJWTClaimsSet();
+        OidcIdToken idToken = new OidcIdToken(state.idToken, instant(claims.getIssueTime()),
+                instant(claims.getExpirationTime()), claims.getClaims());
+        List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList(state.authorities);
+        OidcUser user = new DefaultOidcUser(authorities, idToken, state.nameAttributeKey);
+        return new OAuth2AuthenticationToken(user, authorities, state.registrationId);
+    }
+
+    private static String nameAttributeKey(ClientRegistration registration) {
+        String name = registration.getProviderDetails().getUserInfoEndpoint().getUserNameAttributeName();
+        return StringUtils.hasText(name) ? name : IdTokenClaimNames.SUB;
+    }
+
+    private static List<String> authorityNames(Collection<? extends GrantedAuthority> authorities) {
+        Set<String> names = new LinkedHashSet<>();
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getAuthority() != null) {
+                names.add(authority.getAuthority());
+            }
+        }
+        return List.copyOf(names);
+    }
+
+    private static long epochSecond(Instant instant) {
+        return instant != null ? instant.getEpochSecond() : NONE;
+    }
+
+    private static Instant instant(long epochSecond) {
+        return epochSecond != NONE ? Instant.ofEpochSecond(epochSecond) : null;
+    }
+
+    private static Instant instant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.pesexpo.apigateway.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary form of WebSession attributes for the shared session store
+ *
+ * - Java serialization (the security context and OAuth2 types are Serializable), deflated:
+ *   repeated class descriptors and claim names shrink to a fraction
+ * - Deserialization only accepts the JDK, Spring, Nimbus and gateway packages
+ */
+public class SessionSerializer {
+
+    private static final ObjectInputFilter ALLOWED_CLASSES = ObjectInputFilter.Config.createFilter(
+            "maxdepth=32;java.**;org.springframework.**;com.nimbusds.**;net.minidev.**;com.pesexpo.apigateway.**;!*");
+
+    public byte[] serialize(Map<String, Object> attributes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeObject(new HashMap<>(attributes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Session attributes are not serializable", e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserialize(byte[] data) {
+        try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            in.setObjectInputFilter(ALLOWED_CLASSES);
+            return (Map<String, Object>) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Unreadable session attributes", e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.pesexpo.apigateway.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AssetCacheTest {
+
+    @TempDir
+    Path directory;
+
+    // No memory tier; the disk tier holds one 60-byte asset
+    private AssetCache cache() {
+        return new AssetCache(directory, 0, 0, 100, 100, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void largeAssetIsServedFromDisk() throws Exception {
+        AssetCache cache = cache();
+        AssetCache.Asset asset = putOnDisk(cache, "/_next/static/a.js|br", body('a'));
+
+        assertThat(asset.inMemory()).isFalse();
+        assertThat(asset.length()).isEqualTo(60);
+        assertThat(Files.readAllBytes(asset.file())).isEqualTo(body('a'));
+        cache.release(asset);
+    }
+
+    @Test
+    void evictedFileIsDeleted() throws Exception {
+        AssetCache cache = cache();
+        AssetCache.Asset a = putOnDisk(cache, "a", body('a'));
+        cache.release(a);
+
+        putOnDisk(cache, "b", body('b'));
+
+        assertThat(cache.lookup("a")).isNull();
+        assertThat(a.file()).doesNotExist();
+        assertThat(cache.entries(false)).isEqualTo(1);
+        assertThat(cache.bytes(false)).isEqualTo(60);
+    }
+
+    @Test
+    void evictionWaitsForReaders() throws Exception {
+        AssetCache cache = cache();
+        AssetCache.Asset a = putOnDisk(cache, "a", body('a'));
+        AssetCache.Asset secondReader = cache.lookup("a");
+
+        putOnDisk(cache, "b", body('b'));
+
+        assertThat(cache.lookup("a")).isNull();
+        assertThat(Files.readAllBytes(a.file())).isEqualTo(body('a'));
+
+        cache.release(a);
+        assertThat(a.file()).exists();
+        cache.release(secondReader);
+        assertThat(a.file()).doesNotExist();
+    }
+
+    @Test
+    void replacementGetsNewFileAndOldOneOutlivesItsReader() throws Exception {
+        AssetCache cache = cache();
+        AssetCache.Asset first = putOnDisk(cache, "a", body('a'));
+
+        cache.put("a", new HttpHeaders(), body('z'));
+        AssetCache.Asset second = awaitDisk(cache, "a", entry -> entry != first);
+
+        assertThat(second.file()).isNotEqualTo(first.file());
+        assertThat(Files.readAllBytes(first.file())).isEqualTo(body('a'));
+        assertThat(Files.readAllBytes(second.file())).isEqualTo(body('z'));
+        assertThat(cache.bytes(false)).isEqualTo(60);
+
+        cache.release(first);
+        assertThat(first.file()).doesNotExist();
+        assertThat(second.file()).exists();
+        cache.release(second);
+        assertThat(second.file()).exists();
+    }
+
+    @Test
+    void evictDropsOnlyTheGivenEntry() throws Exception {
+        AssetCache cache = cache();
+        AssetCache.Asset first = putOnDisk(cache, "a", body('a'));
+        cache.put("a", new HttpHeaders(), body('z'));
+        AssetCache.Asset second = awaitDisk(cache, "a", entry -> entry != first);
+        cache.release(first);
+
+        // A stale reader of the replaced entry does not drop the newer one
+        cache.evict("a", first);
+        AssetCache.Asset current = cache.lookup("a");
+        assertThat(current).isSameAs(second);
+        cache.release(current);
+
+        cache.evict("a", second);
+        assertThat(cache.lookup("a")).isNull();
+        assertThat(cache.entries(false)).isZero();
+        assertThat(cache.bytes(false)).isZero();
+        cache.release(second);
+        assertThat(second.file()).doesNotExist();
+    }
+
+    @Test
+    void filesFromPreviousRunAreDeletedOnStartup() throws Exception {
+        Path stale = Files.write(directory.resolve("asset-1.asset"), body('a'));
+        Path partial = Files.write(directory.resolve("write-1.tmp"), body('a'));
+
+        cache();
+
+        assertThat(stale).doesNotExist();
+        assertThat(partial).doesNotExist();
+    }
+
+    private static AssetCache.Asset putOnDisk(AssetCache cache, String key, byte[] body) throws InterruptedException {
+        cache.put(key, new HttpHeaders(), body);
+        return awaitDisk(cache, key, entry -> true);
+    }
+
+    // Disk writes are asynchronous; returns the entry pinned
+    private static AssetCache.Asset awaitDisk(AssetCache cache, String key,
+                                              Predicate<AssetCache.Asset> expected)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            AssetCache.Asset asset = cache.lookup(key);
+            if (asset != null && expected.test(asset)) {
+                return asset;
+            }
+            if (asset != null) {
+                cache.release(asset);
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("not cached on disk: " + key);
+    }
+
+    private static byte[] body(char fill) {
+        byte[] body = new byte[60];
+        Arrays.fill(body, (byte) fill);
+        return body;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pesexpo.apigateway.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GzipChunkEncoderTest {
+
+    private static final int HEADER_LENGTH = 10;
+
+    @Test
+    void emptyBodyRoundTrips() throws IOException {
+        assertThat(gunzip(encode(List.of(), false))).isEmpty();
+        assertThat(gunzip(encode(List.of(new byte[0]), true))).isEmpty();
+    }
+
+    @Test
+    void singleChunkRoundTrips() throws IOException {
+        byte[] chunk = html(1);
+
+        assertThat(gunzip(encode(List.of(chunk), false))).isEqualTo(chunk);
+        assertThat(gunzip(encode(List.of(chunk), true))).isEqualTo(chunk);
+    }
+
+    @Test
+    void multiChunkBodyRoundTrips() throws IOException {
+        List<byte[]> chunks = List.of(html(1), new byte[0], html(2), random(20_000), html(3));
+        byte[] expected = concat(chunks);
+
+        assertThat(gunzip(encode(chunks, false))).isEqualTo(expected);
+        assertThat(gunzip(encode(chunks, true))).isEqualTo(expected);
+    }
+
+    @Test
+    void unflushedChunksCompressBetterThanFlushedOnes() {
+        List<byte[]> chunks = IntStream.range(0, 200).mapToObj(GzipChunkEncoderTest::html).toList();
+
+        assertThat(encode(chunks, false).length).isLessThan(encode(chunks, true).length);
+    }
+
+    @Test
+    void flushedChunkIsDecodableOnArrival() throws DataFormatException {
+        try (GzipChunkEncoder encoder = new GzipChunkEncoder(Deflater.DEFAULT_COMPRESSION)) {
+            byte[] first = encoder.encode(html(1), true);
+
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(first, HEADER_LENGTH, first.length - HEADER_LENGTH);
+            byte[] decoded = new byte[html(1).length];
+            assertThat(inflater.inflate(decoded)).isEqualTo(decoded.length);
+            assertThat(decoded).isEqualTo(html(1));
+            inflater.end();
+        }
+    }
+
+    @Test
+    void countsBytesInAndOut() {
+        try (GzipChunkEncoder encoder = new GzipChunkEncoder(Deflater.DEFAULT_COMPRESSION)) {
+            int out = encoder.encode(html(1), false).length + encoder.finish().length;
+
+            assertThat(encoder.getBytesIn()).isEqualTo(html(1).length);
+            assertThat(encoder.getBytesOut()).isEqualTo(out);
+        }
+    }
+
+    private static byte[] encode(List<byte[]> chunks, boolean flush) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GzipChunkEncoder encoder = new GzipChunkEncoder(Deflater.DEFAULT_COMPRESSION)) {
+            for (byte[] chunk : chunks) {
+                out.writeBytes(encoder.encode(chunk, flush));
+            }
+            out.writeBytes(encoder.finish());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] html(int section) {
+        return ("<section id=\"s" + section + "\"><h2>Products</h2><ul>" + "<li>item</li>".repeat(50) + "</ul></section>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Incompressible, larger than the encoder's scratch buffer
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunks.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
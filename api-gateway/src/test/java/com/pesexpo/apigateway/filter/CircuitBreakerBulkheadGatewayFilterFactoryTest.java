@@ -0,0 +1,172 @@
+package com.pesexpo.apigateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bulkhead permits are given back on every terminal signal; only real outcomes reach the breaker
+ */
+class CircuitBreakerBulkheadGatewayFilterFactoryTest {
+
+    private static final String NAME = "product-service";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CircuitBreakerBulkheadGatewayFilterFactory factory =
+            new CircuitBreakerBulkheadGatewayFilterFactory(meterRegistry);
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void permitReleasedOnCompletion() {
+        GatewayFilter filter = factory.apply(config(2));
+
+        filter.filter(exchange(), respond(HttpStatus.OK)).block();
+
+        assertThat(inFlight()).isZero();
+        assertThat(state()).isZero();
+    }
+
+    @Test
+    void permitReleasedOnErrorAndFailureRecorded() {
+        GatewayFilter filter = factory.apply(config(2));
+
+        StepVerifier.create(filter.filter(exchange(), ex -> Mono.error(new IllegalStateException("connect"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertThat(inFlight()).isZero();
+        assertOpenAndFailingFast(filter);
+    }
+
+    @Test
+    void serverErrorResponseIsAFailure() {
+        GatewayFilter filter = factory.apply(config(2));
+
+        filter.filter(exchange(), respond(HttpStatus.BAD_GATEWAY)).block();
+
+        assertThat(inFlight()).isZero();
+        assertOpenAndFailingFast(filter);
+    }
+
+    @Test
+    void permitReleasedOnCancelWithoutOutcome() {
+        GatewayFilter filter = factory.apply(config(2));
+
+        StepVerifier.create(filter.filter(exchange(), ex -> Mono.never()))
+                .thenCancel()
+                .verify();
+
+        assertThat(inFlight()).isZero();
+        assertThat(state()).isZero();
+    }
+
+    @Test
+    void fullBulkheadRejectsUntilAPermitIsReleased() {
+        GatewayFilter filter = factory.apply(config(1));
+        Disposable stalled = filter.filter(exchange(), ex -> Mono.never()).subscribe();
+
+        MockServerWebExchange rejected = exchange();
+        filter.filter(rejected, respond(HttpStatus.OK)).block();
+
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(upstreamCalls).hasValue(0);
+
+        stalled.dispose();
+        assertThat(inFlight()).isZero();
+        filter.filter(exchange(), respond(HttpStatus.OK)).block();
+        assertThat(upstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void guardReleasesOnEverySignalAndIgnoresClientErrors() {
+        CircuitBreakerBulkheadGatewayFilterFactory.CallGuard guard = factory.guard(config(2));
+
+        assertThat(guard.call(Mono.just("view")).block()).isEqualTo("view");
+        StepVerifier.create(guard.call(Mono.error(WebClientResponseException.create(404, "Not Found",
+                        new HttpHeaders(), new byte[0], null))))
+                .expectError(WebClientResponseException.class)
+                .verify();
+        StepVerifier.create(guard.call(Mono.never())).thenCancel().verify();
+
+        assertThat(inFlight()).isZero();
+        assertThat(state()).isZero();
+
+        StepVerifier.create(guard.call(Mono.error(new IllegalStateException("timeout"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void guardFailsFastWhileTheRouteBreakerIsOpen() {
+        GatewayFilter filter = factory.apply(config(2));
+        CircuitBreakerBulkheadGatewayFilterFactory.CallGuard guard = factory.guard(config(2));
+
+        filter.filter(exchange(), respond(HttpStatus.SERVICE_UNAVAILABLE)).block();
+
+        StepVerifier.create(guard.call(Mono.fromSupplier(upstreamCalls::incrementAndGet)))
+                .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                        .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE))
+                .verify();
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(inFlight()).isZero();
+    }
+
+    private void assertOpenAndFailingFast(GatewayFilter filter) {
+        assertThat(state()).isEqualTo(1);
+        MockServerWebExchange rejected = exchange();
+        filter.filter(rejected, respond(HttpStatus.OK)).block();
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+        assertThat(inFlight()).isZero();
+    }
+
+    // Opens on the first failure
+    private static CircuitBreakerBulkheadGatewayFilterFactory.Config config(int maxConcurrentCalls) {
+        CircuitBreakerBulkheadGatewayFilterFactory.Config config =
+                new CircuitBreakerBulkheadGatewayFilterFactory.Config();
+        config.setName(NAME);
+        config.setSlidingWindowSize(10);
+        config.setMinimumCalls(1);
+        config.setWaitInOpen(Duration.ofMinutes(1));
+        config.setMaxConcurrentCalls(maxConcurrentCalls);
+        return config;
+    }
+
+    private GatewayFilterChain respond(HttpStatus status) {
+        return exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getResponse().setStatusCode(status);
+            return Mono.empty();
+        };
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/products/1"));
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("gateway.bulkhead.in-flight").tag("route", NAME).gauge().value();
+    }
+
+    // RouteCircuitBreaker.State ordinal: 0 CLOSED, 1 OPEN, 2 HALF_OPEN
+    private double state() {
+        return meterRegistry.get("gateway.circuitbreaker.state").tag("route", NAME).gauge().value();
+    }
+}
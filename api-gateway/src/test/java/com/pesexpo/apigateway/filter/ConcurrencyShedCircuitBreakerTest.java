@@ -0,0 +1,126 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.loadbalancer.LoadBalancerStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * product-service filter stack (circuit breaker, hedging, retry) in front of the adaptive
+ * concurrency limiter: requests the limiter sheds must not open the breaker
+ */
+class ConcurrencyShedCircuitBreakerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private final CountDownLatch firstCallArrived = new CountDownLatch(1);
+    private DisposableServer upstream;
+    private WebTestClient client;
+
+    // First call is held for 500 ms so it keeps the only concurrency slot
+    @BeforeEach
+    void startUpstream() {
+        upstream = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    int call = upstreamCalls.incrementAndGet();
+                    firstCallArrived.countDown();
+                    Duration delay = call == 1 ? Duration.ofMillis(500) : Duration.ZERO;
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just("{\"call\":" + call + "}").delayElement(delay));
+                })
+                .bindNow();
+
+        // Breaker that opens on a single failure
+        CircuitBreakerBulkheadGatewayFilterFactory.Config circuitBreaker =
+                new CircuitBreakerBulkheadGatewayFilterFactory.Config();
+        circuitBreaker.setName("product-service");
+        circuitBreaker.setSlidingWindowSize(10);
+        circuitBreaker.setMinimumCalls(1);
+        circuitBreaker.setWaitInOpen(Duration.ofMinutes(1));
+
+        HedgingGatewayFilterFactory.Config hedging = new HedgingGatewayFilterFactory.Config();
+        hedging.setName("products");
+        hedging.setMinDelay(Duration.ofSeconds(2));
+        hedging.setMaxDelay(Duration.ofSeconds(2));
+
+        RetryBudgetGatewayFilterFactory.Config retry = new RetryBudgetGatewayFilterFactory.Config();
+        retry.setName("product-service");
+        retry.setBackoff(Duration.ofMillis(10));
+
+        AdaptiveConcurrencyLimitFilter limiter = new AdaptiveConcurrencyLimitFilter(
+                1, 1, 1, 0.2, 1.5, 600, meterRegistry);
+
+        client = UpstreamGatewayHarness.client(
+                        URI.create("lb://PRODUCT-SERVICE"),
+                        URI.create("http://localhost:" + upstream.port()),
+                        new CircuitBreakerBulkheadGatewayFilterFactory(meterRegistry).apply(circuitBreaker),
+                        new HedgingGatewayFilterFactory(5, 20,
+                                new LoadBalancerStats(Duration.ofSeconds(10), Duration.ofSeconds(30),
+                                        Duration.ofMillis(50), Duration.ofSeconds(1), Duration.ofMinutes(10)),
+                                meterRegistry).apply(hedging),
+                        new RetryBudgetGatewayFilterFactory(meterRegistry).apply(retry),
+                        new OrderedGatewayFilter(limiter::filter, limiter.getOrder()))
+                .mutate()
+                .responseTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void shedRequestDoesNotOpenCircuitBreaker() throws Exception {
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() ->
+                client.get().uri("/api/v1/products/1")
+                        .exchange()
+                        .expectStatus().isOk());
+        assertThat(firstCallArrived.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Limit reached: shed by the gateway, not retried
+        client.get().uri("/api/v1/products/2")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().doesNotExist(HttpHeaders.RETRY_AFTER);
+        slow.get(5, TimeUnit.SECONDS);
+        awaitSlotReleased();
+
+        // Breaker still closed: the next request reaches the upstream
+        client.get().uri("/api/v1/products/3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"call\":2}");
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(meterRegistry.counter("gateway.concurrency.rejected", "service", "PRODUCT-SERVICE").count())
+                .isEqualTo(1);
+    }
+
+    // The limiter releases in doFinally, which can run just after the client saw the response
+    private void awaitSlotReleased() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("gateway.concurrency.in-flight").gauge().value() > 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
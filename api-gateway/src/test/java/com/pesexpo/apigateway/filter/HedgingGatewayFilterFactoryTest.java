@@ -0,0 +1,91 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.loadbalancer.LoadBalancerStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingGatewayFilterFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private DisposableServer upstream;
+
+    @AfterEach
+    void stopUpstream() {
+        if (upstream != null) {
+            upstream.disposeNow();
+        }
+    }
+
+    @Test
+    void fastResponseReachesClientWithoutHedge() {
+        startUpstream(Duration.ZERO);
+
+        client(Duration.ofSeconds(1)).get().uri("/api/v1/products/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"call\":1}");
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(hedgingCount("hedged")).isZero();
+    }
+
+    @Test
+    void hedgedResponseReachesClient() {
+        // First call stalls, so the hedge sent after 20 ms wins
+        startUpstream(Duration.ofSeconds(2));
+
+        client(Duration.ofMillis(20)).get().uri("/api/v1/products/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"call\":2}");
+
+        assertThat(hedgingCount("hedged")).isEqualTo(1);
+        assertThat(hedgingCount("won")).isEqualTo(1);
+    }
+
+    private void startUpstream(Duration firstCallDelay) {
+        upstream = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    int call = upstreamCalls.incrementAndGet();
+                    Duration delay = call == 1 ? firstCallDelay : Duration.ZERO;
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just("{\"call\":" + call + "}").delayElement(delay));
+                })
+                .bindNow();
+    }
+
+    private WebTestClient client(Duration hedgeDelay) {
+        HedgingGatewayFilterFactory factory = new HedgingGatewayFilterFactory(5, 20,
+                new LoadBalancerStats(Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ofMillis(50),
+                        Duration.ofSeconds(1), Duration.ofMinutes(10)),
+                meterRegistry);
+        HedgingGatewayFilterFactory.Config config = new HedgingGatewayFilterFactory.Config();
+        config.setName("products");
+        config.setMinDelay(hedgeDelay);
+        config.setMaxDelay(hedgeDelay);
+        GatewayFilter hedging = factory.apply(config);
+
+        return UpstreamGatewayHarness.client(URI.create("http://localhost:" + upstream.port()), hedging)
+                .mutate()
+                .responseTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private double hedgingCount(String result) {
+        return meterRegistry.counter("gateway.hedging.requests", "route", "products", "result", result).count();
+    }
+}
@@ -0,0 +1,98 @@
+package com.pesexpo.apigateway.filter;
+
+import com.pesexpo.apigateway.cache.ResponseCache;
+import com.pesexpo.apigateway.security.CredentialedRequests;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCacheGatewayFilterTest {
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private DisposableServer upstream;
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void anonymousResponseIsStoredAndReplayed() {
+        WebTestClient client = client(null);
+
+        client.get().uri("/api/v1/products/1").exchange()
+                .expectHeader().valueEquals(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "MISS");
+        client.get().uri("/api/v1/products/1").exchange()
+                .expectHeader().valueEquals(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "HIT")
+                .expectBody(String.class).isEqualTo("{\"call\":1}");
+
+        assertThat(upstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void authorizedResponseIsNotStored() {
+        WebTestClient client = client(null);
+
+        client.get().uri("/api/v1/products/1").header(HttpHeaders.AUTHORIZATION, "Bearer alice").exchange()
+                .expectBody(String.class).isEqualTo("{\"call\":1}");
+        client.get().uri("/api/v1/products/1").exchange()
+                .expectHeader().valueEquals(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "MISS")
+                .expectBody(String.class).isEqualTo("{\"call\":2}");
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void sessionCookieCountsAsCredentials() {
+        WebTestClient client = client(null);
+
+        client.get().uri("/api/v1/products/1").cookie("SESSION", "alice").exchange();
+        client.get().uri("/api/v1/products/1").exchange()
+                .expectHeader().valueEquals(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "MISS");
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void publicResponseToAuthorizedRequestIsStored() {
+        WebTestClient client = client("public, max-age=30");
+
+        client.get().uri("/api/v1/products/1").header(HttpHeaders.AUTHORIZATION, "Bearer alice").exchange();
+        client.get().uri("/api/v1/products/1").exchange()
+                .expectHeader().valueEquals(ResponseCacheGatewayFilter.CACHE_STATUS_HEADER, "HIT");
+
+        assertThat(upstreamCalls).hasValue(1);
+    }
+
+    private WebTestClient client(String cacheControl) {
+        upstream = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    int call = upstreamCalls.incrementAndGet();
+                    if (cacheControl != null) {
+                        response.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+                    }
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just("{\"call\":" + call + "}"));
+                })
+                .bindNow();
+
+        ResponseCache cache = new ResponseCache("products", Duration.ofSeconds(30), Duration.ofSeconds(60),
+                1 << 20, 1 << 16, new SimpleMeterRegistry());
+        return UpstreamGatewayHarness.client(URI.create("http://localhost:" + upstream.port()),
+                new ResponseCacheGatewayFilter(cache, List.of(HttpHeaders.ACCEPT),
+                        new CredentialedRequests("SESSION", "GATEWAY_SESSION")));
+    }
+}
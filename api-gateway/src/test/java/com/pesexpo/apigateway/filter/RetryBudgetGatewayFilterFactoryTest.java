@@ -0,0 +1,92 @@
+package com.pesexpo.apigateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryBudgetGatewayFilterFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private DisposableServer upstream;
+    private WebTestClient client;
+
+    // First call: 503 (rolling restart); later calls echo the request body, or "ok" without one
+    @BeforeEach
+    void startUpstream() {
+        upstream = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> request.receive().aggregate().asString()
+                        .defaultIfEmpty("ok")
+                        .flatMap(body -> {
+                            if (upstreamCalls.incrementAndGet() == 1) {
+                                return response.status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                                        .sendString(Mono.just("restarting")).then();
+                            }
+                            return response.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(body)).then();
+                        }))
+                .bindNow();
+
+        RetryBudgetGatewayFilterFactory.Config config = new RetryBudgetGatewayFilterFactory.Config();
+        config.setName("orders");
+        config.setBackoff(Duration.ofMillis(10));
+        client = UpstreamGatewayHarness.client(URI.create("http://localhost:" + upstream.port()),
+                new RetryBudgetGatewayFilterFactory(meterRegistry).apply(config));
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.disposeNow();
+    }
+
+    @Test
+    void serviceUnavailableIsRetriedAndSecondResponseReachesClient() {
+        client.get().uri("/api/v1/orders/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class).isEqualTo("ok");
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(meterRegistry.counter("gateway.retry.requests", "route", "orders", "result", "retried").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void requestBodyIsSentAgainOnRetry() {
+        client.put().uri("/api/v1/orders/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"quantity\":2}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"quantity\":2}");
+
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void nonRetryableMethodGetsTheUpstreamResponse() {
+        client.post().uri("/api/v1/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{}")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody(String.class).isEqualTo("restarting");
+
+        assertThat(upstreamCalls).hasValue(1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.pesexpo.apigateway.filter;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route filters in front of a real upstream, run the way the gateway runs them: sorted by
+ * order together with NettyWriteResponseFilter and NettyRoutingFilter
+ */
+final class UpstreamGatewayHarness {
+
+    private UpstreamGatewayHarness() {
+    }
+
+    static WebTestClient client(URI upstream, GatewayFilter... routeFilters) {
+        return client(upstream, upstream, routeFilters);
+    }
+
+    /**
+     * Route declared with routeUri (e.g. lb://PRODUCT-SERVICE, as seen by global filters) but
+     * routed to the upstream, the way the load balancer would have resolved it
+     */
+    static WebTestClient client(URI routeUri, URI upstream, GatewayFilter... routeFilters) {
+        ObjectProvider<List<HttpHeadersFilter>> headersFilters = new DefaultListableBeanFactory()
+                .getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class));
+        NettyRoutingFilter routing = new NettyRoutingFilter(HttpClient.create(), headersFilters,
+                new HttpClientProperties());
+        NettyWriteResponseFilter write = new NettyWriteResponseFilter(List.of());
+
+        List<GatewayFilter> filters = new ArrayList<>(List.of(routeFilters));
+        filters.add(new OrderedGatewayFilter(write::filter, write.getOrder()));
+        filters.add(new OrderedGatewayFilter(routing::filter, Ordered.LOWEST_PRECEDENCE));
+        AnnotationAwareOrderComparator.sort(filters);
+
+        Route route = Route.builder()
+                .id("test")
+                .uri(routeUri)
+                .predicate(exchange -> true)
+                .build();
+
+        return WebTestClient.bindToWebHandler(exchange -> {
+            URI requestUrl = UriComponentsBuilder.fromUri(upstream)
+                    .replacePath(exchange.getRequest().getPath().value())
+                    .build(true)
+                    .toUri();
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+            exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR, requestUrl);
+            return new Chain(filters, 0).filter(exchange);
+        }).build();
+    }
+
+    private record Chain(List<GatewayFilter> filters, int index) implements GatewayFilterChain {
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange) {
+            return index < filters.size()
+                    ? filters.get(index).filter(exchange, new Chain(filters, index + 1))
+                    : Mono.empty();
+        }
+    }
+}
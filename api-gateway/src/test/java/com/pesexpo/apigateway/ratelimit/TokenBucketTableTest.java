@@ -0,0 +1,160 @@
+package com.pesexpo.apigateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class TokenBucketTableTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void newClientGetsTheFullBurst() {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(table.tryConsume("alice", 1, 5, 1)).isZero();
+        }
+        long wait = table.tryConsume("alice", 1, 5, 1);
+
+        assertThat(wait).isPositive().isLessThanOrEqualTo(SECOND);
+    }
+
+    @Test
+    void waitCoversTheMissingTokens() {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+        assertThat(table.tryConsume("alice", 1, 10, 10)).isZero();
+
+        long wait = table.tryConsume("alice", 1, 10, 3);
+
+        assertThat(wait).isBetween(3 * SECOND - SECOND / 10, 3 * SECOND);
+    }
+
+    @Test
+    void rejectedRequestTakesNoTokens() {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+        assertThat(table.tryConsume("alice", 0.001, 3, 2)).isZero();
+
+        assertThat(table.tryConsume("alice", 0.001, 3, 2)).isPositive();
+        assertThat(table.tryConsume("alice", 0.001, 3, 1)).isZero();
+    }
+
+    @Test
+    void tokensRefillAtTheReplenishRate() throws InterruptedException {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+        assertThat(table.tryConsume("alice", 100, 2, 2)).isZero();
+        assertThat(table.tryConsume("alice", 100, 2, 1)).isPositive();
+
+        // 100/s: one token every 10 ms
+        Thread.sleep(30);
+
+        assertThat(table.tryConsume("alice", 100, 2, 1)).isZero();
+    }
+
+    @Test
+    void refillIsCappedAtBurstCapacity() throws InterruptedException {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+        assertThat(table.tryConsume("alice", 50, 3, 3)).isZero();
+
+        // Worth 10 tokens, but the bucket holds 3
+        Thread.sleep(200);
+
+        assertThat(table.tryConsume("alice", 50, 3, 3)).isZero();
+        assertThat(table.tryConsume("alice", 50, 3, 1)).isPositive();
+    }
+
+    @Test
+    void clientsHaveSeparateBuckets() {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMinutes(5));
+        assertThat(table.tryConsume("alice", 1, 1, 1)).isZero();
+        assertThat(table.tryConsume("alice", 1, 1, 1)).isPositive();
+
+        assertThat(table.tryConsume("bob", 1, 1, 1)).isZero();
+        assertThat(table.size()).isEqualTo(2);
+    }
+
+    @Test
+    void idleBucketsAreEvicted() throws InterruptedException {
+        TokenBucketTable table = new TokenBucketTable(4, 1000, Duration.ofMillis(50));
+        table.tryConsume("alice", 1, 1, 1);
+        table.tryConsume("bob", 1, 1, 1);
+        Thread.sleep(80);
+        table.tryConsume("carol", 1, 1, 1);
+
+        assertThat(table.evictIdle()).isEqualTo(2);
+        assertThat(table.size()).isEqualTo(1);
+        // An evicted client starts over with a full bucket
+        assertThat(table.tryConsume("alice", 1, 1, 1)).isZero();
+    }
+
+    @Test
+    void leastRecentlyUsedBucketIsEvictedAtTheCap() {
+        TokenBucketTable table = new TokenBucketTable(1, 2, Duration.ofMinutes(5));
+        table.tryConsume("alice", 0.001, 1, 1);
+        table.tryConsume("bob", 0.001, 1, 1);
+        table.tryConsume("alice", 0.001, 1, 1);
+
+        // bob is the least recently used: carol replaces it
+        table.tryConsume("carol", 0.001, 1, 1);
+
+        assertThat(table.size()).isEqualTo(2);
+        assertThat(table.tryConsume("alice", 0.001, 1, 1)).isPositive();
+        assertThat(table.tryConsume("bob", 0.001, 1, 1)).isZero();
+    }
+
+    @Test
+    void keyCapIsPerStripe() {
+        TokenBucketTable table = new TokenBucketTable(4, 400, Duration.ofMinutes(5));
+
+        for (int i = 0; i < 10_000; i++) {
+            table.tryConsume("client-" + i, 1, 1, 1);
+        }
+
+        // 100 per stripe; keys spread over all four stripes
+        assertThat(table.size()).isEqualTo(400);
+    }
+
+    @Test
+    void stripeCountMustBeAPowerOfTwo() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new TokenBucketTable(3, 1000, Duration.ofMinutes(5)));
+        assertThatIllegalArgumentException().isThrownBy(() -> new TokenBucketTable(0, 1000, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void concurrentClientsNeverTakeMoreThanTheBurst() throws InterruptedException {
+        TokenBucketTable table = new TokenBucketTable(16, 1000, Duration.ofMinutes(5));
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (table.tryConsume("shared", 0.001, 1000, 1) == 0) {
+                        granted.incrementAndGet();
+                    }
+                    table.tryConsume("own-" + Thread.currentThread().getName(), 0.001, 1000, 1);
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(granted).hasValue(1000);
+        assertThat(table.size()).isEqualTo(9);
+    }
+}
@@ -0,0 +1,61 @@
+package com.pesexpo.apigateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BulkheadTest {
+
+    @Test
+    void rejectsBeyondMaxConcurrentCalls() {
+        Bulkhead bulkhead = new Bulkhead(2);
+
+        assertThat(bulkhead.tryAcquire()).isTrue();
+        assertThat(bulkhead.tryAcquire()).isTrue();
+        assertThat(bulkhead.tryAcquire()).isFalse();
+        assertThat(bulkhead.inFlight()).isEqualTo(2);
+
+        bulkhead.release();
+
+        assertThat(bulkhead.inFlight()).isEqualTo(1);
+        assertThat(bulkhead.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void neverAdmitsMoreThanMaxUnderContention() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(4);
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    if (bulkhead.tryAcquire()) {
+                        maxSeen.accumulateAndGet(admitted.incrementAndGet(), Math::max);
+                        admitted.decrementAndGet();
+                        bulkhead.release();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(maxSeen.get()).isLessThanOrEqualTo(4);
+        assertThat(bulkhead.inFlight()).isZero();
+    }
+}
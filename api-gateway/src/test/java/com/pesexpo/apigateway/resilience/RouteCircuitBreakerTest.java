@@ -0,0 +1,181 @@
+package com.pesexpo.apigateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RouteCircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(5).toNanos();
+    private static final long SLOW = Duration.ofSeconds(3).toNanos();
+
+    private final List<String> transitions = new ArrayList<>();
+
+    // Window of 4, trips at 50% failures or slow calls (slow: 1 s or more), 2 trial calls
+    private RouteCircuitBreaker breaker(Duration waitInOpen) {
+        return new RouteCircuitBreaker(4, 4, 50, 50, Duration.ofSeconds(1), waitInOpen, 2,
+                (from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    void staysClosedUntilMinimumCallsRecorded() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+
+        call(breaker, FAST, true);
+        call(breaker, FAST, true);
+        call(breaker, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    @Test
+    void opensOnFailureRateAndRejectsCalls() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+
+        call(breaker, FAST, false);
+        call(breaker, FAST, false);
+        call(breaker, FAST, true);
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+        call(breaker, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(breaker.remainingOpenNanos()).isPositive().isLessThanOrEqualTo(Duration.ofMinutes(1).toNanos());
+        assertThat(transitions).containsExactly("CLOSED->OPEN");
+    }
+
+    @Test
+    void opensOnSlowCallRate() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+
+        call(breaker, FAST, false);
+        call(breaker, SLOW, false);
+        call(breaker, FAST, false);
+        call(breaker, SLOW, false);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void oldestOutcomeLeavesTheWindow() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+
+        call(breaker, FAST, true);
+        call(breaker, FAST, false);
+        call(breaker, FAST, false);
+        call(breaker, FAST, false);
+        // The first failure is evicted: still one failure in four
+        call(breaker, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void lateResultWhileOpenIsDropped() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        trip(breaker);
+
+        breaker.onResult(FAST, false);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpenAfterWaitLetsOnlyTrialCallsThrough() {
+        RouteCircuitBreaker breaker = breaker(Duration.ZERO);
+        trip(breaker);
+
+        assertThat(breaker.remainingOpenNanos()).isZero();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void successfulTrialCallsClose() {
+        RouteCircuitBreaker breaker = breaker(Duration.ZERO);
+        trip(breaker);
+
+        call(breaker, FAST, false);
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.HALF_OPEN);
+        call(breaker, FAST, false);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED");
+        // The window starts over after closing
+        call(breaker, FAST, true);
+        call(breaker, FAST, true);
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedTrialCallsReopen() {
+        RouteCircuitBreaker breaker = breaker(Duration.ZERO);
+        trip(breaker);
+
+        call(breaker, FAST, false);
+        call(breaker, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN");
+    }
+
+    @Test
+    void slowTrialCallsReopen() {
+        RouteCircuitBreaker breaker = breaker(Duration.ZERO);
+        trip(breaker);
+
+        call(breaker, SLOW, false);
+        call(breaker, SLOW, false);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void ignoredTrialCallReturnsItsPermit() {
+        RouteCircuitBreaker breaker = breaker(Duration.ZERO);
+        trip(breaker);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        // Client cancelled one trial call: no outcome, the permit goes back
+        breaker.onIgnored();
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void ignoredCallWhileClosedRecordsNothing() {
+        RouteCircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            breaker.onIgnored();
+        }
+        call(breaker, FAST, true);
+
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.CLOSED);
+    }
+
+    private static void call(RouteCircuitBreaker breaker, long durationNanos, boolean failed) {
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onResult(durationNanos, failed);
+    }
+
+    private static void trip(RouteCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(FAST, true);
+        }
+        assertThat(breaker.getState()).isEqualTo(RouteCircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,88 @@
+package com.pesexpo.apigateway.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledRoutePolicyTest {
+
+    private static final List<String> WRITERS = List.of("SCOPE_write", "ROLE_ADMIN");
+
+    // Same shape as app.security.policies, plus a more specific admin rule
+    private final CompiledRoutePolicy policy = CompiledRoutePolicy.compile(List.of(
+            new CompiledRoutePolicy.Definition("/api/v1/products/**", List.of("GET"), null, true),
+            new CompiledRoutePolicy.Definition("/api/v1/products/**", null, WRITERS, false),
+            new CompiledRoutePolicy.Definition("/api/v1/products/*/stock", List.of("PUT"), List.of("ROLE_ADMIN"), false),
+            new CompiledRoutePolicy.Definition("/api/v1/orders/*", List.of("delete"), List.of("ROLE_ADMIN"), false)));
+
+    @Test
+    void doubleWildcardMatchesZeroOrMoreSegments() {
+        assertThat(pattern("/api/v1/products", HttpMethod.POST)).isEqualTo("/api/v1/products/**");
+        assertThat(pattern("/api/v1/products/", HttpMethod.POST)).isEqualTo("/api/v1/products/**");
+        assertThat(pattern("/api/v1/products/1/reviews/2", HttpMethod.POST)).isEqualTo("/api/v1/products/**");
+        assertThat(policy.match("/api/v1", HttpMethod.POST)).isNull();
+        assertThat(policy.match("/api/v1/productsX", HttpMethod.POST)).isNull();
+    }
+
+    @Test
+    void mostSpecificPatternWins() {
+        CompiledRoutePolicy.Rule rule = policy.match("/api/v1/products/1/stock", HttpMethod.PUT);
+
+        assertThat(rule.pattern()).isEqualTo("/api/v1/products/*/stock");
+        assertThat(rule.allows(List.of("SCOPE_write"))).isFalse();
+        assertThat(rule.allows(List.of("ROLE_ADMIN"))).isTrue();
+    }
+
+    @Test
+    void methodMismatchFallsThroughToNextRule() {
+        CompiledRoutePolicy.Rule read = policy.match("/api/v1/products/1", HttpMethod.GET);
+        CompiledRoutePolicy.Rule write = policy.match("/api/v1/products/1", HttpMethod.POST);
+
+        assertThat(read.permitAll()).isTrue();
+        assertThat(write.permitAll()).isFalse();
+        assertThat(write.allows(List.of("ROLE_USER"))).isFalse();
+        assertThat(write.allows(List.of("ROLE_USER", "SCOPE_write"))).isTrue();
+
+        // Specific node without a rule for the method: the enclosing ** still applies
+        assertThat(pattern("/api/v1/products/1/stock", HttpMethod.GET)).isEqualTo("/api/v1/products/**");
+
+        // Methods are case-insensitive in definitions; no rule for other methods
+        assertThat(pattern("/api/v1/orders/1", HttpMethod.DELETE)).isEqualTo("/api/v1/orders/*");
+        assertThat(policy.match("/api/v1/orders/1", HttpMethod.POST)).isNull();
+    }
+
+    @Test
+    void matrixParametersDoNotHideProtectedPaths() {
+        assertThat(pattern("/api/v1/products;jsessionid=x/1/stock", HttpMethod.PUT))
+                .isEqualTo("/api/v1/products/*/stock");
+        assertThat(pattern("/api/v1/products/1/stock;v=2", HttpMethod.PUT)).isEqualTo("/api/v1/products/*/stock");
+        assertThat(pattern("/api/v1/orders;a=b/1", HttpMethod.DELETE)).isEqualTo("/api/v1/orders/*");
+    }
+
+    @Test
+    void encodedSegmentsAreDecodedBeforeMatching() {
+        assertThat(pattern("/api/v1/%70roducts/1/stock", HttpMethod.PUT)).isEqualTo("/api/v1/products/*/stock");
+        assertThat(pattern("/api/v1/products/1/st%6Fck", HttpMethod.PUT)).isEqualTo("/api/v1/products/*/stock");
+        assertThat(pattern("/api//v1/products/1", HttpMethod.POST)).isEqualTo("/api/v1/products/**");
+    }
+
+    @Test
+    void requestPathIsMatchedWithinTheApplication() {
+        PathContainer path = RequestPath
+                .parse("/gateway/api/v1/products/1/stock", "/gateway")
+                .pathWithinApplication();
+
+        assertThat(policy.match(path, HttpMethod.PUT).pattern()).isEqualTo("/api/v1/products/*/stock");
+    }
+
+    private String pattern(String path, HttpMethod method) {
+        CompiledRoutePolicy.Rule rule = policy.match(path, method);
+        assertThat(rule).as("rule for %s %s", method, path).isNotNull();
+        return rule.pattern();
+    }
+}
@@ -0,0 +1,105 @@
+package com.pesexpo.apigateway.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkedCookieTest {
+
+    private static final Duration MAX_AGE = Duration.ofDays(7);
+
+    private final ChunkedCookie cookie = new ChunkedCookie("GATEWAY_SESSION", 10, 3, true);
+
+    @Test
+    void valueThatFitsIsOneCookie() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        assertThat(cookie.write(MockServerHttpRequest.get("/").build(), response, "short", MAX_AGE)).isTrue();
+
+        assertThat(response.getCookies().keySet()).containsExactly("GATEWAY_SESSION");
+        ResponseCookie written = response.getCookies().getFirst("GATEWAY_SESSION");
+        assertThat(written.getValue()).isEqualTo("short");
+        assertThat(written.getMaxAge()).isEqualTo(MAX_AGE);
+        assertThat(written.isHttpOnly()).isTrue();
+        assertThat(written.isSecure()).isTrue();
+        assertThat(cookie.read(requestWith(response))).isEqualTo("short");
+    }
+
+    @Test
+    void longerValueIsSplitIntoChunksAndJoinedOnRead() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        String value = "0123456789abcdefghijKLMNO";
+
+        assertThat(cookie.write(MockServerHttpRequest.get("/").build(), response, value, MAX_AGE)).isTrue();
+
+        assertThat(response.getCookies().keySet())
+                .containsExactly("GATEWAY_SESSION.0", "GATEWAY_SESSION.1", "GATEWAY_SESSION.2");
+        assertThat(response.getCookies().getFirst("GATEWAY_SESSION.2").getValue()).isEqualTo("KLMNO");
+        assertThat(cookie.read(requestWith(response))).isEqualTo(value);
+    }
+
+    @Test
+    void valueOverMaxSizeIsRefused() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        assertThat(cookie.write(MockServerHttpRequest.get("/").build(), response, "x".repeat(31), MAX_AGE)).isFalse();
+
+        assertThat(response.getCookies()).isEmpty();
+    }
+
+    @Test
+    void chunksOfAPreviousLargerValueAreExpired() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/")
+                .cookie(new HttpCookie("GATEWAY_SESSION.0", "0123456789"),
+                        new HttpCookie("GATEWAY_SESSION.1", "abcdefghij"),
+                        new HttpCookie("GATEWAY_SESSION.2", "KLMNO"))
+                .build();
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        assertThat(cookie.write(request, response, "0123456789abc", MAX_AGE)).isTrue();
+
+        assertThat(response.getCookies().get("GATEWAY_SESSION.0")).singleElement()
+                .satisfies(chunk -> assertThat(chunk.getValue()).isEqualTo("0123456789"));
+        assertThat(response.getCookies().get("GATEWAY_SESSION.1")).singleElement()
+                .satisfies(chunk -> assertThat(chunk.getValue()).isEqualTo("abc"));
+        assertThat(response.getCookies().get("GATEWAY_SESSION.2")).singleElement()
+                .satisfies(chunk -> assertThat(chunk.getMaxAge()).isZero());
+    }
+
+    @Test
+    void clearExpiresEveryCookieOfTheValue() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/")
+                .cookie(new HttpCookie("GATEWAY_SESSION", "short"),
+                        new HttpCookie("GATEWAY_SESSION.0", "stale"),
+                        new HttpCookie("OTHER", "kept"))
+                .build();
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        cookie.clear(request, response);
+
+        assertThat(response.getCookies().keySet()).containsExactlyInAnyOrder("GATEWAY_SESSION", "GATEWAY_SESSION.0");
+        response.getCookies().values().stream().flatMap(List::stream)
+                .forEach(expired -> assertThat(expired.getMaxAge()).isZero());
+    }
+
+    @Test
+    void missingCookieReadsAsNull() {
+        assertThat(cookie.read(MockServerHttpRequest.get("/").build())).isNull();
+    }
+
+    // The request a browser sends back after receiving the response's cookies
+    private static MockServerHttpRequest requestWith(MockServerHttpResponse response) {
+        HttpCookie[] cookies = response.getCookies().values().stream()
+                .flatMap(List::stream)
+                .map(written -> new HttpCookie(written.getName(), written.getValue()))
+                .toArray(HttpCookie[]::new);
+        return MockServerHttpRequest.get("/").cookie(cookies).build();
+    }
+}
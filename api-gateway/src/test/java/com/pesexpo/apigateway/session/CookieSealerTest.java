@@ -0,0 +1,99 @@
+package com.pesexpo.apigateway.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CookieSealerTest {
+
+    private static final String PURPOSE = "GATEWAY_SESSION";
+    private static final byte[] VALUE = "login".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final String currentKey = newKey();
+    private final String previousKey = newKey();
+
+    @Test
+    void sealedValueOpensWithTheSameKeyAndPurpose() {
+        CookieSealer sealer = sealer(currentKey);
+
+        CookieSealer.Unsealed unsealed = sealer.unseal(PURPOSE, sealer.seal(PURPOSE, VALUE, inOneHour()));
+
+        assertThat(unsealed).isNotNull();
+        assertThat(unsealed.value()).isEqualTo(VALUE);
+        assertThat(unsealed.staleKey()).isFalse();
+        assertThat(unsealCount("ok")).isEqualTo(1);
+    }
+
+    @Test
+    void tamperedValueIsRejected() {
+        CookieSealer sealer = sealer(currentKey);
+        byte[] sealed = Base64.getUrlDecoder().decode(sealer.seal(PURPOSE, VALUE, inOneHour()));
+        sealed[sealed.length - 1] ^= 1;
+
+        assertThat(sealer.unseal(PURPOSE, Base64.getUrlEncoder().withoutPadding().encodeToString(sealed))).isNull();
+        assertThat(sealer.unseal(PURPOSE, "not base64!")).isNull();
+        assertThat(unsealCount("invalid")).isEqualTo(2);
+    }
+
+    @Test
+    void valueSealedForAnotherCookieIsRejected() {
+        CookieSealer sealer = sealer(currentKey);
+
+        assertThat(sealer.unseal(PURPOSE + "_LOGIN", sealer.seal(PURPOSE, VALUE, inOneHour()))).isNull();
+    }
+
+    @Test
+    void expiredValueIsRejected() {
+        CookieSealer sealer = sealer(currentKey);
+
+        assertThat(sealer.unseal(PURPOSE, sealer.seal(PURPOSE, VALUE, Instant.now().minusSeconds(1)))).isNull();
+        assertThat(unsealCount("expired")).isEqualTo(1);
+    }
+
+    @Test
+    void valueSealedWithRotatedOutKeyOpensAsStaleUntilTheKeyIsDropped() {
+        String sealed = sealer(previousKey).seal(PURPOSE, VALUE, inOneHour());
+
+        CookieSealer.Unsealed unsealed = sealer(currentKey, previousKey).unseal(PURPOSE, sealed);
+        assertThat(unsealed).isNotNull();
+        assertThat(unsealed.value()).isEqualTo(VALUE);
+        assertThat(unsealed.staleKey()).isTrue();
+
+        assertThat(sealer(currentKey).unseal(PURPOSE, sealed)).isNull();
+    }
+
+    @Test
+    void newValuesAreSealedWithTheFirstKey() {
+        String sealed = sealer(currentKey, previousKey).seal(PURPOSE, VALUE, inOneHour());
+
+        assertThat(sealer(currentKey).unseal(PURPOSE, sealed)).isNotNull();
+        assertThat(sealer(previousKey).unseal(PURPOSE, sealed)).isNull();
+    }
+
+    private CookieSealer sealer(String... keys) {
+        return new CookieSealer(List.of(keys), meterRegistry);
+    }
+
+    private double unsealCount(String result) {
+        return meterRegistry.counter("gateway.session.cookie.unseal", "result", result).count();
+    }
+
+    private static Instant inOneHour() {
+        return Instant.now().plus(Duration.ofHours(1));
+    }
+
+    private static String newKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
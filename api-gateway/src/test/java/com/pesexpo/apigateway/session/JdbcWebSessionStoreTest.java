@@ -0,0 +1,194 @@
+package com.pesexpo.apigateway.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.web.server.WebSession;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two stores on one H2 database stand in for two gateway instances
+ */
+class JdbcWebSessionStoreTest {
+
+    private static final String TABLE = "gateway_web_session";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private JdbcWebSessionStore nodeA;
+    private JdbcWebSessionStore nodeB;
+
+    @BeforeEach
+    void createStores() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        nodeA = store(new SimpleMeterRegistry());
+        nodeA.initializeSchema();
+        nodeB = store(meterRegistry);
+    }
+
+    @AfterEach
+    void shutdown() {
+        database.shutdown();
+    }
+
+    @Test
+    void sessionWrittenOnOneNodeIsReadOnAnother() {
+        String id = newSession(nodeA, "user", "alice");
+
+        WebSession session = nodeB.retrieveSession(id).block();
+
+        assertThat(session).isNotNull();
+        assertThat((String) session.getAttribute("user")).isEqualTo("alice");
+        assertThat(version(id)).isEqualTo(1);
+    }
+
+    @Test
+    void writeIsComparedAndSetOnTheVersionRead() {
+        String id = newSession(nodeA, "user", "alice");
+        WebSession onA = nodeA.retrieveSession(id).block();
+        WebSession onB = nodeB.retrieveSession(id).block();
+
+        onA.getAttributes().put("cart", "3 items");
+        onA.save().block();
+        assertThat(version(id)).isEqualTo(2);
+
+        // B read version 1: its write conflicts, is reapplied on top of A's and lands as version 3
+        onB.getAttributes().put("locale", "km");
+        onB.save().block();
+
+        assertThat(version(id)).isEqualTo(3);
+        assertThat(conflicts()).isEqualTo(1);
+        WebSession merged = store(new SimpleMeterRegistry()).retrieveSession(id).block();
+        assertThat(merged.getAttributes())
+                .containsEntry("user", "alice")
+                .containsEntry("cart", "3 items")
+                .containsEntry("locale", "km");
+    }
+
+    @Test
+    void conflictingRemovalIsReapplied() {
+        String id = newSession(nodeA, "user", "alice");
+        WebSession onA = nodeA.retrieveSession(id).block();
+        WebSession onB = nodeB.retrieveSession(id).block();
+
+        onA.getAttributes().put("cart", "3 items");
+        onA.save().block();
+        onB.getAttributes().remove("user");
+        onB.save().block();
+
+        WebSession merged = store(new SimpleMeterRegistry()).retrieveSession(id).block();
+        assertThat(merged.getAttributes()).doesNotContainKey("user").containsEntry("cart", "3 items");
+    }
+
+    @Test
+    void sessionDeletedOnAnotherNodeIsNotResurrected() {
+        String id = newSession(nodeA, "user", "alice");
+        WebSession onB = nodeB.retrieveSession(id).block();
+
+        // Logout on A while a request on B still holds the session
+        nodeA.retrieveSession(id).block().invalidate().block();
+        onB.getAttributes().put("cart", "3 items");
+        onB.save().block();
+
+        assertThat(count(id)).isZero();
+        assertThat(nodeB.retrieveSession(id).block()).isNull();
+    }
+
+    @Test
+    void unchangedSessionOnlyQueuesItsLastAccessTime() throws InterruptedException {
+        String id = newSession(nodeA, "user", "alice");
+        long written = lastAccess(id);
+        Thread.sleep(5);
+
+        WebSession first = nodeB.retrieveSession(id).block();
+        first.save().block();
+        Thread.sleep(5);
+        WebSession second = nodeB.retrieveSession(id).block();
+        second.save().block();
+
+        // No full write, and nothing in the table until the batch runs
+        assertThat(version(id)).isEqualTo(1);
+        assertThat(lastAccess(id)).isEqualTo(written);
+        assertThat(fullWrites()).isZero();
+
+        nodeB.flushTouches();
+
+        assertThat(lastAccess(id)).isEqualTo(second.getLastAccessTime().toEpochMilli());
+        assertThat(meterRegistry.counter("gateway.session.store.writes", "type", "touch").count()).isEqualTo(1);
+    }
+
+    @Test
+    void touchNeverMovesLastAccessTimeBack() throws InterruptedException {
+        String id = newSession(nodeA, "user", "alice");
+        WebSession stale = nodeB.retrieveSession(id).block();
+        Thread.sleep(5);
+
+        // A newer full write on A, then B flushes the older touch
+        WebSession onA = nodeA.retrieveSession(id).block();
+        onA.getAttributes().put("cart", "3 items");
+        onA.save().block();
+        stale.save().block();
+        nodeB.flushTouches();
+
+        assertThat(lastAccess(id)).isEqualTo(onA.getLastAccessTime().toEpochMilli());
+    }
+
+    @Test
+    void changedSessionIdMovesTheRow() {
+        String id = newSession(nodeA, "user", "alice");
+        WebSession session = nodeA.retrieveSession(id).block();
+
+        session.changeSessionId().block();
+        session.save().block();
+
+        assertThat(count(id)).isZero();
+        assertThat(count(session.getId())).isEqualTo(1);
+        assertThat((String) nodeB.retrieveSession(session.getId()).block().getAttribute("user")).isEqualTo("alice");
+    }
+
+    private JdbcWebSessionStore store(SimpleMeterRegistry registry) {
+        // No revalidation interval: every retrieval checks the version in the table
+        return new JdbcWebSessionStore(jdbc, TABLE, Duration.ofMinutes(30), Duration.ZERO, 100, 3,
+                new SessionSerializer(), registry);
+    }
+
+    private static String newSession(JdbcWebSessionStore store, String name, String value) {
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put(name, value);
+        session.save().block();
+        return session.getId();
+    }
+
+    private long version(String id) {
+        return jdbc.queryForObject("SELECT version FROM " + TABLE + " WHERE id = ?", Long.class, id);
+    }
+
+    private long lastAccess(String id) {
+        return jdbc.queryForObject("SELECT last_access_time FROM " + TABLE + " WHERE id = ?", Long.class, id);
+    }
+
+    private int count(String id) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + TABLE + " WHERE id = ?", Integer.class, id);
+    }
+
+    private double conflicts() {
+        return meterRegistry.counter("gateway.session.store.writes", "type", "conflict").count();
+    }
+
+    private double fullWrites() {
+        return meterRegistry.counter("gateway.session.store.writes", "type", "full").count();
+    }
+}
@@ -16,7 +16,9 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -44,9 +46,7 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public List<ResponseOrder> findAll() {
-        return orderRepository.findAll().stream()
-                .map(this::mapToResponseOrder)
-                .toList();
+        return mapToResponseOrders(orderRepository.findAll());
     }
 
     @Override
@@ -54,14 +54,12 @@ public class OrderServiceImpl implements OrderService {
         Order order = orderRepository.findByUuid(uuid)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Order not found"));
 
-        return mapToResponseOrder(order);
+        return mapToResponseOrder(order, productClient.findProductByUuid(order.getProductUuid()));
     }
 
     @Override
     public List<ResponseOrder> findByProductUuid(String productUuid) {
-        return orderRepository.findByProductUuid(productUuid).stream()
-                .map(this::mapToResponseOrder)
-                .toList();
+        return mapToResponseOrders(orderRepository.findByProductUuid(productUuid));
     }
 
     @Override
@@ -73,10 +71,16 @@ public class OrderServiceImpl implements OrderService {
         orderRepository.deleteByUuid(uuid);
     }
 
-    private ResponseOrder mapToResponseOrder(Order order) {
-        // Fetch product details from product-service
-        ProductResponse product = productClient.findProductByUuid(order.getProductUuid());
+    private List<ResponseOrder> mapToResponseOrders(List<Order> orders) {
+        // Fetch each distinct product once from product-service, not once per order
+        Map<String, ProductResponse> products = new HashMap<>();
+        return orders.stream()
+                .map(order -> mapToResponseOrder(order,
+                        products.computeIfAbsent(order.getProductUuid(), productClient::findProductByUuid)))
+                .toList();
+    }
 
+    private ResponseOrder mapToResponseOrder(Order order, ProductResponse product) {
         return ResponseOrder.builder()
                 .uuid(order.getUuid())
                 .product(product)